@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2013 Manuel Peinado
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.manuelpeinado.refreshactionitem;
+
+import android.content.Context;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewParent;
+
+import com.actionbarsherlock.view.MenuItem;
+
+/**
+ * Reuses an action view when the options menu is rebuilt (for example, through
+ * <tt>supportInvalidateOptionsMenu()</tt>), so that it keeps its progress, badge and
+ * listeners instead of starting over.
+ * <p>
+ * The previous view is only reused if it belongs to the given context, which stops a
+ * destroyed activity from leaking into the new one. Otherwise the menu's own action view
+ * is used if it has the right type. If the menu item is declared without
+ * <tt>android:actionViewClass</tt> no action view is ever inflated just to be thrown away.
+ */
+final class ActionViewRecycler {
+    private ActionViewRecycler() {
+    }
+
+    /**
+     * Returns the view to reuse for the given menu item, or null if a new one has to be created
+     */
+    static <T extends View> T findReusable(Context context, MenuItem menuItem, T previous, Class<T> type) {
+        if (previous != null && previous.getContext() == context) {
+            return previous;
+        }
+        View actionView = menuItem.getActionView();
+        return type.isInstance(actionView) ? type.cast(actionView) : null;
+    }
+
+    /**
+     * Makes the given view the action view of the menu item
+     */
+    static void attach(MenuItem menuItem, View view) {
+        if (menuItem.getActionView() == view) {
+            return;
+        }
+        // The old menu is being thrown away, but a view cannot have two parents
+        ViewParent parent = view.getParent();
+        if (parent instanceof ViewGroup) {
+            ((ViewGroup) parent).removeView(view);
+        }
+        menuItem.setActionView(view);
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2013 Manuel Peinado
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.manuelpeinado.refreshactionitem;
+
+import android.content.Context;
+import android.content.res.TypedArray;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.graphics.Typeface;
+import android.os.SystemClock;
+import android.util.DisplayMetrics;
+
+import com.readystatesoftware.viewbadger.BadgeView;
+
+/**
+ * Draws a badge straight into the canvas of the view that owns it, so that showing,
+ * hiding or updating the badge never changes the view hierarchy. It looks like the
+ * badges created by {@link BadgeView} and supports the same positions, and it fades in
+ * and out in the same way.
+ * <p>
+ * All the methods must be called from the UI thread.
+ */
+final class BadgeRenderer {
+    // Same defaults as BadgeView. Unit: dp
+    private static final float MARGIN = 5;
+    private static final float HORIZONTAL_PADDING = 5;
+    private static final float CORNER_RADIUS = 8;
+    private static final float DEFAULT_TEXT_SIZE = 12;
+    private static final int DEFAULT_BACKGROUND_COLOR = Color.parseColor("#CCFF0000");
+    private static final long FADE_DURATION = 200;
+    // Text appearance attributes we care about. They must be sorted by id
+    private static final int[] TEXT_APPEARANCE_ATTRS = {
+        android.R.attr.textSize, android.R.attr.textStyle, android.R.attr.textColor
+    };
+
+    private final Paint mPaintBackground = new Paint();
+    private final Paint mPaintText = new Paint();
+    private TextMeasureCache mMeasureCache;
+    private final RectF mRect = new RectF();
+    private final float mMargin;
+    private final float mHorizontalPadding;
+    private final float mCornerRadius;
+    private int mPosition = BadgeView.POSITION_TOP_RIGHT;
+    private String mText = "";
+    private float mTextWidth;
+    private float mTextAscent;
+    private float mTextDescent;
+    private boolean mShown;
+    private long mFadeStartTime;
+    private boolean mFading;
+
+    BadgeRenderer(Context context) {
+        DisplayMetrics metrics = context.getResources().getDisplayMetrics();
+        mMargin = (int) (MARGIN * metrics.density);
+        mHorizontalPadding = (int) (HORIZONTAL_PADDING * metrics.density);
+        mCornerRadius = (int) (CORNER_RADIUS * metrics.density);
+        mPaintBackground.setAntiAlias(true);
+        mPaintBackground.setColor(DEFAULT_BACKGROUND_COLOR);
+        mPaintText.setAntiAlias(true);
+        mPaintText.setColor(Color.WHITE);
+        mPaintText.setTypeface(Typeface.DEFAULT_BOLD);
+        mPaintText.setTextSize(DEFAULT_TEXT_SIZE * metrics.scaledDensity);
+        onTextAppearanceChanged();
+    }
+
+    /**
+     * @param position One of the <tt>POSITION_*</tt> constants in {@link BadgeView}
+     */
+    void setPosition(int position) {
+        mPosition = position;
+    }
+
+    void setBackgroundColor(int color) {
+        mPaintBackground.setColor(color);
+    }
+
+    /**
+     * Applies the text size, style and color of the given text appearance style
+     */
+    void setTextAppearance(Context context, int resId) {
+        TypedArray a = context.obtainStyledAttributes(resId, TEXT_APPEARANCE_ATTRS);
+        mPaintText.setTextSize(a.getDimension(0, mPaintText.getTextSize()));
+        int style = a.getInt(1, Typeface.BOLD);
+        mPaintText.setTypeface(Typeface.defaultFromStyle(style));
+        mPaintText.setColor(a.getColor(2, mPaintText.getColor()));
+        a.recycle();
+        onTextAppearanceChanged();
+    }
+
+    void setText(String text) {
+        if (text == null) {
+            text = "";
+        }
+        if (text.equals(mText)) {
+            return;
+        }
+        mText = text;
+        updateTextMetrics();
+    }
+
+    String getText() {
+        return mText;
+    }
+
+    private void onTextAppearanceChanged() {
+        mMeasureCache = TextMeasureCache.forPaint(mPaintText);
+        mTextAscent = mMeasureCache.getAscent();
+        mTextDescent = mMeasureCache.getDescent();
+        updateTextMetrics();
+    }
+
+    private void updateTextMetrics() {
+        mTextWidth = mMeasureCache.measureText(mText);
+    }
+
+    void show(boolean animate) {
+        setShown(true, animate);
+    }
+
+    void hide(boolean animate) {
+        setShown(false, animate);
+    }
+
+    private void setShown(boolean shown, boolean animate) {
+        if (shown == mShown) {
+            return;
+        }
+        mShown = shown;
+        mFading = animate;
+        mFadeStartTime = SystemClock.uptimeMillis();
+    }
+
+    boolean isShown() {
+        return mShown;
+    }
+
+    /**
+     * Draws the badge, positioned inside a box of the given size
+     * 
+     * @return <tt>True</tt> if the badge is fading in or out, in which case the owner
+     *         must draw it again in the next frame
+     */
+    boolean draw(Canvas canvas, int width, int height) {
+        if (!mShown && !mFading) {
+            return false;
+        }
+        float alpha = 1;
+        if (mFading) {
+            float fraction = (SystemClock.uptimeMillis() - mFadeStartTime) / (float) FADE_DURATION;
+            if (fraction >= 1) {
+                mFading = false;
+                if (!mShown) {
+                    return false;
+                }
+            } else {
+                // Same curves as the fade animations of BadgeView
+                alpha = mShown ? 1 - (1 - fraction) * (1 - fraction) : 1 - fraction * fraction;
+            }
+        }
+        layout(width, height);
+        int backgroundAlpha = mPaintBackground.getAlpha();
+        int textAlpha = mPaintText.getAlpha();
+        mPaintBackground.setAlpha((int) (backgroundAlpha * alpha));
+        mPaintText.setAlpha((int) (textAlpha * alpha));
+        float radius = Math.min(mCornerRadius, mRect.height() / 2);
+        canvas.drawRoundRect(mRect, radius, radius, mPaintBackground);
+        canvas.drawText(mText, mRect.left + mHorizontalPadding, mRect.top - mTextAscent, mPaintText);
+        mPaintBackground.setAlpha(backgroundAlpha);
+        mPaintText.setAlpha(textAlpha);
+        return mFading;
+    }
+
+    private void layout(int width, int height) {
+        float badgeWidth = mTextWidth + 2 * mHorizontalPadding;
+        float badgeHeight = mTextDescent - mTextAscent;
+        float left;
+        float top;
+        switch (mPosition) {
+        case BadgeView.POSITION_TOP_LEFT:
+            left = mMargin;
+            top = mMargin;
+            break;
+        case BadgeView.POSITION_BOTTOM_LEFT:
+            left = mMargin;
+            top = height - mMargin - badgeHeight;
+            break;
+        case BadgeView.POSITION_BOTTOM_RIGHT:
+            left = width - mMargin - badgeWidth;
+            top = height - mMargin - badgeHeight;
+            break;
+        case BadgeView.POSITION_CENTER:
+            left = (width - badgeWidth) / 2;
+            top = (height - badgeHeight) / 2;
+            break;
+        case BadgeView.POSITION_TOP_RIGHT:
+        default:
+            left = width - mMargin - badgeWidth;
+            top = mMargin;
+            break;
+        }
+        mRect.set(left, top, left + badgeWidth, top + badgeHeight);
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2013 Manuel Peinado
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.manuelpeinado.refreshactionitem;
+
+/**
+ * Counts the bytes read through {@link ProgressInputStream} and
+ * {@link ProgressReadableByteChannel} and passes them on to a {@link ProgressReporter}.
+ * <p>
+ * The count is a plain long, and the reporter is only called once enough bytes have been
+ * read to make a visible difference. Meant to be used from a single thread.
+ */
+final class ByteCounter {
+    private final ProgressReporter mReporter;
+    private long mCount;
+    // The reporter is called when the count reaches this
+    private long mNextReport;
+
+    ByteCounter(ProgressReporter reporter, long length) {
+        mReporter = reporter;
+        setLength(length);
+    }
+
+    void setLength(long length) {
+        mReporter.setMax(length);
+        report();
+    }
+
+    long getCount() {
+        return mCount;
+    }
+
+    void add(long n) {
+        mCount += n;
+        if (mCount >= mNextReport) {
+            report();
+        }
+    }
+
+    /**
+     * Moves the count back, for streams that support mark and reset
+     */
+    void reset(long count) {
+        mCount = count;
+        report();
+    }
+
+    /**
+     * Reports the count right away. Called at the end of the data, so that the operation
+     * ends at 100%
+     */
+    void report() {
+        if (mReporter.getMax() == ProgressReporter.UNKNOWN) {
+            mNextReport = Long.MAX_VALUE;
+            return;
+        }
+        mReporter.setProgress(mCount);
+        // Smaller steps would not change the value the action item receives
+        mNextReport = mCount + (1L << mReporter.getScaleShift());
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2013 Manuel Peinado
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.manuelpeinado.refreshactionitem;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Lets the code that runs a background operation know that the operation is no longer
+ * wanted. Cancellation is cooperative: the operation should check
+ * {@link #isCancelled()} (or call {@link #throwIfCancelled()}) every now and then and stop
+ * as soon as possible.
+ * <p>
+ * All the methods can be called from any thread.
+ */
+public class CancellationToken {
+    private volatile boolean mCancelled;
+
+    /**
+     * Requests the cancellation of the operation. Calling it more than once has no effect
+     */
+    public void cancel() {
+        mCancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return mCancelled;
+    }
+
+    /**
+     * Convenience method for operations that prefer to bail out with an exception
+     * 
+     * @throws CancellationException
+     *             if the operation has been cancelled
+     */
+    public void throwIfCancelled() {
+        if (mCancelled) {
+            throw new CancellationException();
+        }
+    }
+}
@@ -0,0 +1,545 @@
+/*
+ * Copyright (C) 2013 Manuel Peinado
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.manuelpeinado.refreshactionitem;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Canvas;
+import android.graphics.RectF;
+import android.graphics.drawable.Drawable;
+import android.os.SystemClock;
+import android.text.TextUtils;
+import android.util.AttributeSet;
+import android.view.View;
+import android.view.View.OnClickListener;
+import android.view.View.OnLongClickListener;
+
+import com.actionbarsherlock.view.MenuItem;
+
+/**
+ * Alternative implementation of {@link RefreshActionItem} made of a single view. The
+ * refresh button, the progress indicators and the badge are all drawn by this view
+ * itself, so there are no children to measure, lay out or draw. Use it when the action
+ * bar is laid out very often.
+ * <p>
+ * It recognizes the same style attributes as {@link RefreshActionItem}, but only offers its
+ * basic features: progress, indicator types, badges and {@link #recycle(Context, MenuItem,
+ * FlatRefreshActionItem)}. It has its own {@link RefreshActionListener}, and none of the
+ * badge counter, click gating, cancellation, progress rate, rendering metrics or saved
+ * state. The indeterminate progress indicator is always the built-in one (see
+ * {@link RefreshActionItem#setBuiltInIndeterminateIndicator(boolean)}), and the
+ * determinate one is always drawn as with {@link ProgressIndicatorRenderMode#DIRECT}.
+ */
+public class FlatRefreshActionItem extends View implements OnClickListener, OnLongClickListener {
+    private Drawable mIcon;
+    private Drawable mButtonBackground;
+    private RefreshActionListener mRefreshButtonListener;
+    private final BadgeRenderer mBadge;
+    // Please note that the state can be "showing progress" and "showing badge" simultaneously, in that case
+    // the badge remains hidden until we stop showing progress
+    private boolean mShowingBadge;
+    private MenuItem mMenuItem;
+    private boolean mShowingProgress;
+    private int mMax = 100;
+    private int mProgress = 0;
+    // The progress value currently displayed, between 0 and 1
+    private float mValue;
+    private ProgressIndicatorType mProgressIndicatorType;
+    private final int mDefaultSize;
+    private final float mIndicatorPadding;
+    private final ProgressArcPainter mPainter = new ProgressArcPainter();
+    // Owned by mPainter
+    private final RectF mRect = mPainter.getBounds();
+    private float mProgressRedrawThreshold = ProgressPublisher.DEFAULT_REDRAW_THRESHOLD;
+    private final ProgressPublisher mPublisher = new ProgressPublisher(new ProgressPublisher.Target() {
+        @Override
+        public void setMax(int max) {
+            FlatRefreshActionItem.this.setMax(max);
+        }
+
+        @Override
+        public void setProgress(int progress) {
+            FlatRefreshActionItem.this.setProgress(progress);
+        }
+
+        @Override
+        public void incrementProgressBy(int diff) {
+            FlatRefreshActionItem.this.incrementProgressBy(diff);
+        }
+    });
+
+    public interface RefreshActionListener {
+        void onRefreshButtonClick(FlatRefreshActionItem sender);
+    }
+
+    public FlatRefreshActionItem(Context context) {
+        this(context, null);
+    }
+
+    public FlatRefreshActionItem(Context context, AttributeSet attrs) {
+        this(context, attrs, R.attr.refreshActionItemStyle);
+    }
+
+    public FlatRefreshActionItem(Context context, AttributeSet attrs, int defStyle) {
+        super(context, attrs);
+        Resources r = context.getResources();
+        mDefaultSize = r.getDimensionPixelSize(R.dimen.abs__action_bar_default_height);
+        mIndicatorPadding = r.getDisplayMetrics().density * ProgressIndicator.PADDING
+                + r.getDimension(R.dimen.abs__action_bar_icon_vertical_padding);
+        mBadge = new BadgeRenderer(context);
+        setOnClickListener(this);
+        setOnLongClickListener(this);
+
+        ResolvedStyle style = ResolvedStyle.obtain(context, attrs, defStyle);
+        mProgressIndicatorType = style.progressIndicatorType;
+        Drawable icon = style.newIcon(r);
+        if (icon != null) {
+            setIcon(icon);
+        }
+        Drawable background = style.newBackground(r);
+        if (background != null) {
+            setButtonBackground(background);
+        }
+        setIndicatorForegroundColor(style.progressIndicatorForegroundColor);
+        setIndicatorBackgroundColor(style.progressIndicatorBackgroundColor);
+        if (style.badgeBackgroundColor != -1) {
+            mBadge.setBackgroundColor(style.badgeBackgroundColor);
+        }
+        if (style.badgeTextStyle != 0) {
+            mBadge.setTextAppearance(context, style.badgeTextStyle);
+        }
+        if (style.badgePosition != 0) {
+            mBadge.setPosition(style.badgePosition);
+        }
+    }
+
+    private void setIndicatorForegroundColor(int color) {
+        mPainter.setForegroundColor(color);
+    }
+
+    private void setIndicatorBackgroundColor(int color) {
+        mPainter.setBackgroundColor(color);
+    }
+
+    private void setIcon(Drawable icon) {
+        mIcon = icon;
+        updateIconBounds();
+        invalidate();
+    }
+
+    private void setButtonBackground(Drawable background) {
+        if (mButtonBackground != null) {
+            mButtonBackground.setCallback(null);
+        }
+        mButtonBackground = background;
+        if (background != null) {
+            background.setCallback(this);
+            if (background.isStateful()) {
+                background.setState(getDrawableState());
+            }
+            background.setBounds(0, 0, getWidth(), getHeight());
+        }
+        invalidate();
+    }
+
+    public void setRefreshActionListener(RefreshActionListener listener) {
+        this.mRefreshButtonListener = listener;
+    }
+
+    public void setMenuItem(MenuItem menuItem) {
+        this.mMenuItem = menuItem;
+        if (menuItem.getIcon() != null) {
+            setIcon(mMenuItem.getIcon());
+        }
+    }
+
+    /**
+     * Returns an action item for the given menu item, reusing the one returned by the
+     * previous call if possible. Call it from <tt>onCreateOptionsMenu</tt> instead of
+     * <tt>getActionView()</tt> so that rebuilding the menu keeps the same action item, with
+     * its progress, badge and listener intact.
+     * <p>
+     * Declare the menu item without <tt>android:actionViewClass</tt>. Otherwise the menu
+     * inflater creates a new action item every time the menu is rebuilt, only for this
+     * method to throw it away
+     * 
+     * @param context
+     *            The context of the activity which owns the menu
+     * @param previous
+     *            The action item returned by the previous call, or null
+     */
+    public static FlatRefreshActionItem recycle(Context context, MenuItem menuItem, FlatRefreshActionItem previous) {
+        FlatRefreshActionItem item = ActionViewRecycler.findReusable(context, menuItem, previous, FlatRefreshActionItem.class);
+        if (item == null) {
+            item = new FlatRefreshActionItem(context);
+        }
+        ActionViewRecycler.attach(menuItem, item);
+        item.setMenuItem(menuItem);
+        return item;
+    }
+
+    /**
+     * Adds an exclamation icon to the refresh button. This is intended to
+     * suggest the user that new data is available.
+     * <p>
+     * The badge is only shown while progress is not being shown
+     *
+     * @see #showBadge(String)
+     */
+    public void showBadge() {
+        showBadge("!");
+    }
+
+    /**
+     * Adds a badge icon with a give text to the refresh button. This is
+     * intended to suggest the user that new data is available, including how
+     * many items
+     * <p>
+     * The badge is only shown while progress is not being shown
+     *
+     * If the badge is already visible its text is just replaced, without animating it again
+     *
+     * @param text
+     *            Text that is drawn inside the badge icon
+     * @see #showBadge()
+     */
+    public void showBadge(String text) {
+        if (mShowingBadge) {
+            mBadge.setText(text);
+            if (!mShowingProgress) {
+                invalidate();
+            }
+            return;
+        }
+        mShowingBadge = true;
+        mBadge.setText(text);
+        if (!mShowingProgress) {
+            // Otherwise the badge will be shown as soon as we stop showing progress
+            mBadge.show(true);
+            invalidate();
+        }
+    }
+
+    /**
+     * Hides the badge associated to this action item.
+     *
+     * @see #showBadge()
+     * @see #showBadge(String)
+     * @see #isBadgeVisible()
+     */
+    public void hideBadge() {
+        if (!mShowingBadge) {
+            return;
+        }
+        mShowingBadge = false;
+        if (!mShowingProgress) {
+            // If showing progress the badge is already hidden
+            mBadge.hide(true);
+            invalidate();
+        }
+    }
+
+    /**
+     * Returns whether this action item has a visible badge.
+     * @see #showBadge()
+     * @see #showBadge(String)
+     * @see #hideBadge()
+     */
+    public boolean isBadgeVisible() {
+        return mShowingBadge;
+    }
+
+    /**
+     * Return the upper limit of this progress bar's range.
+     *
+     * @return a positive integer
+     * @see #setMax(int)
+     * @see #getProgress()
+     */
+    public synchronized int getMax() {
+        return mMax;
+    }
+
+    /**
+     * Return the current progress, between 0 and {@link #getMax()}
+     *
+     * @see #setProgress(int)
+     */
+    public synchronized int getProgress() {
+        return mProgress;
+    }
+
+    /**
+     * Changes the state of the action item between the modes "showing refresh button" and "showing progress"
+     * @param show
+     */
+    public void showProgress(boolean show) {
+        if (show == mShowingProgress) {
+            return;
+        }
+        if (mShowingBadge) {
+            if (show) {
+                // Hide badge temporarily until we stop showing progress
+                mBadge.hide(false);
+            } else {
+                // If badge was hidden temporarily we restore it back to visible
+                mBadge.show(false);
+            }
+        }
+        mPublisher.discard();
+        setProgress(0);
+        mShowingProgress = show;
+        // While showing progress this is not a button anymore
+        setClickable(!show);
+        setLongClickable(!show);
+        invalidate();
+    }
+
+    /**
+     * Set the current progress to the specified value. If the progress bar is
+     * not in determinate mode the view is not changed.
+     *
+     * @param progress
+     *            the new progress, between 0 and {@link #getMax()}
+     * @see #getProgress()
+     * @see #incrementProgressBy(int)
+     */
+    public synchronized void setProgress(int progress) {
+        if (progress < 0) {
+            progress = 0;
+        }
+        if (progress > mMax) {
+            progress = mMax;
+        }
+        if (progress != mProgress) {
+            mProgress = progress;
+            updateProgressIndicatorValue();
+        }
+    }
+
+    private void updateProgressIndicatorValue() {
+        float value = mProgress / (float) mMax;
+        float radius = Math.min(mRect.width(), mRect.height()) / 2;
+        float distance = ProgressPublisher.getArcLength(value - mValue, radius);
+        if (!ProgressPublisher.isNoticeable(value, distance, mProgressRedrawThreshold)) {
+            return;
+        }
+        mValue = value;
+        if (mShowingProgress) {
+            postInvalidate();
+        }
+    }
+
+    /**
+     * @see RefreshActionItem#setProgressRedrawThreshold(float)
+     */
+    public synchronized void setProgressRedrawThreshold(float pixels) {
+        mProgressRedrawThreshold = pixels;
+    }
+
+    public synchronized float getProgressRedrawThreshold() {
+        return mProgressRedrawThreshold;
+    }
+
+    /**
+     * Increase the progress bar's progress by the specified amount.
+     *
+     * @param diff
+     *            the amount by which the progress must be increased
+     * @see #setProgress(int)
+     */
+    public synchronized final void incrementProgressBy(int diff) {
+        setProgress(mProgress + diff);
+    }
+
+    /**
+     * Thread-safe and lock-free alternative to {@link #setProgress(int)}, intended for
+     * background threads which report progress very often. The value is just stored, and
+     * the UI thread picks up the latest one once per frame.
+     *
+     * @see RefreshActionItem#publishProgress(int)
+     */
+    public void publishProgress(int progress) {
+        mPublisher.publishProgress(progress);
+    }
+
+    /**
+     * Thread-safe and lock-free alternative to {@link #incrementProgressBy(int)}.
+     *
+     * @see RefreshActionItem#publishIncrement(int)
+     */
+    public void publishIncrement(int diff) {
+        mPublisher.publishIncrement(diff);
+    }
+
+    /**
+     * Thread-safe and lock-free alternative to {@link #setMax(int)}.
+     *
+     * @see RefreshActionItem#publishMax(int)
+     */
+    public void publishMax(int max) {
+        mPublisher.publishMax(max);
+    }
+
+    /**
+     * Set the range of the progress bar to 0...<tt>max</tt>
+     *
+     * @param max
+     *            the upper range of this progress bar
+     * @see #getMax()
+     * @see #setProgress(int)
+     */
+    public synchronized void setMax(int max) {
+        if (max < 0) {
+            max = 0;
+        }
+        if (max != mMax) {
+            mMax = max;
+            if (mProgress > mMax) {
+                mProgress = mMax;
+            }
+            updateProgressIndicatorValue();
+        }
+    }
+
+    /**
+     * @param style One of {@link ProgressIndicatorType#WHEEL}, {@link ProgressIndicatorType#PIE}
+     *              or {@link ProgressIndicatorType#INDETERMINATE}
+     */
+    public void setProgressIndicatorType(ProgressIndicatorType style) {
+        if (style == mProgressIndicatorType) {
+            return;
+        }
+        mProgressIndicatorType = style;
+        invalidate();
+    }
+
+    public ProgressIndicatorType getProgressIndicatorType() {
+        return mProgressIndicatorType;
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        setMeasuredDimension(resolveSize(mDefaultSize, widthMeasureSpec), resolveSize(mDefaultSize, heightMeasureSpec));
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        mPainter.setBounds(mIndicatorPadding, mIndicatorPadding, w - mIndicatorPadding, h - mIndicatorPadding);
+        if (mButtonBackground != null) {
+            mButtonBackground.setBounds(0, 0, w, h);
+        }
+        updateIconBounds();
+    }
+
+    private void updateIconBounds() {
+        if (mIcon == null) {
+            return;
+        }
+        // Centered, not scaled, just like the refresh button of RefreshActionItem
+        int width = mIcon.getIntrinsicWidth();
+        int height = mIcon.getIntrinsicHeight();
+        int left = (getWidth() - width) / 2;
+        int top = (getHeight() - height) / 2;
+        mIcon.setBounds(left, top, left + width, top + height);
+    }
+
+    @Override
+    protected void drawableStateChanged() {
+        super.drawableStateChanged();
+        if (mButtonBackground != null && mButtonBackground.isStateful()) {
+            mButtonBackground.setState(getDrawableState());
+        }
+    }
+
+    @Override
+    protected boolean verifyDrawable(Drawable who) {
+        return who == mButtonBackground || super.verifyDrawable(who);
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        if (!mShowingProgress) {
+            drawButton(canvas);
+        } else if (mProgressIndicatorType == ProgressIndicatorType.INDETERMINATE) {
+            drawIndeterminate(canvas);
+        } else {
+            drawDeterminate(canvas);
+        }
+    }
+
+    private void drawButton(Canvas canvas) {
+        if (mButtonBackground != null) {
+            mButtonBackground.draw(canvas);
+        }
+        if (mIcon != null) {
+            mIcon.draw(canvas);
+        }
+        if (mBadge.draw(canvas, getWidth(), getHeight())) {
+            // The badge is fading in or out
+            invalidate();
+        }
+    }
+
+    private void drawDeterminate(Canvas canvas) {
+        if (mRect.width() <= 0) {
+            return;
+        }
+        mPainter.draw(canvas, mValue, mProgressIndicatorType == ProgressIndicatorType.PIE);
+    }
+
+    private void drawIndeterminate(Canvas canvas) {
+        if (mRect.width() <= 0) {
+            return;
+        }
+        long time = SystemClock.uptimeMillis();
+        float rotation = ProgressIndicator.getIndeterminateRotation(time);
+        float sweep = ProgressIndicator.getIndeterminateSweep(time);
+        mPainter.drawIndeterminate(canvas, rotation, sweep, false);
+        if (getWindowVisibility() == View.VISIBLE && isShown()) {
+            // The next frame is only scheduled while someone can see it
+            postInvalidateDelayed(ProgressIndicator.INDETERMINATE_FRAME_INTERVAL);
+        }
+    }
+
+    @Override
+    protected void onWindowVisibilityChanged(int visibility) {
+        super.onWindowVisibilityChanged(visibility);
+        if (visibility == View.VISIBLE && mShowingProgress) {
+            // Resume the indeterminate animation
+            invalidate();
+        }
+    }
+
+    @Override
+    public void onClick(View v) {
+        if (mShowingProgress) {
+            return;
+        }
+        if (mRefreshButtonListener != null) {
+            mRefreshButtonListener.onRefreshButtonClick(this);
+        }
+    }
+
+    @Override
+    public boolean onLongClick(View v) {
+        if (mMenuItem == null || TextUtils.isEmpty(mMenuItem.getTitle())) {
+            return true;
+        }
+        CheatSheet.show(this, mMenuItem.getTitle());
+        return true;
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2013 Manuel Peinado
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.manuelpeinado.refreshactionitem;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+/**
+ * Runs a piece of work on the UI thread at most once per frame, no matter how many
+ * times or from how many threads it is scheduled in the meantime.
+ * <p>
+ * {@link #schedule()} can be called from any thread and only costs an atomic
+ * compare-and-set when the work is already pending.
+ * <p>
+ * Runs are paced with a {@link Handler} and a fixed {@link #FRAME_INTERVAL}, not with the
+ * display vsync: <tt>Choreographer</tt> needs API 16 and the library supports API 7. The
+ * work may therefore run slightly out of phase with the frames, but never more than once
+ * per frame interval.
+ */
+final class FrameCoalescer implements Runnable {
+    /**
+     * Duration of a frame at 60 fps. Unit: milliseconds
+     */
+    static final long FRAME_INTERVAL = 16;
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+    private final AtomicBoolean mScheduled = new AtomicBoolean();
+    private final Runnable mWork;
+    private volatile long mLastRunTime;
+
+    FrameCoalescer(Runnable work) {
+        mWork = work;
+    }
+
+    /**
+     * Makes sure the work runs on the UI thread within the next frame
+     */
+    void schedule() {
+        if (!mScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        long delay = mLastRunTime + FRAME_INTERVAL - SystemClock.uptimeMillis();
+        if (delay > 0) {
+            sMainHandler.postDelayed(this, delay);
+        } else {
+            sMainHandler.post(this);
+        }
+    }
+
+    /**
+     * Discards the pending run, if any
+     */
+    void cancel() {
+        sMainHandler.removeCallbacks(this);
+        mScheduled.set(false);
+    }
+
+    @Override
+    public void run() {
+        mLastRunTime = SystemClock.uptimeMillis();
+        // Cleared before running so that whatever is published from now on gets its own run
+        mScheduled.set(false);
+        mWork.run();
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2013 Manuel Peinado
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.manuelpeinado.refreshactionitem;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Combines the progress of several parallel subtasks into the single value shown by a
+ * {@link RefreshActionItem}.
+ * <p>
+ * Each subtask gets its own {@link Subtask} handle, with a weight that says how much it
+ * contributes to the whole operation. Handles can be updated from any thread without
+ * locking, and don't contend with each other. The combined value is computed on the UI
+ * thread, at most once per frame.
+ */
+public class ProgressAggregator {
+    /**
+     * Range used for the action item, way more precise than what a progress indicator can show
+     */
+    private static final int RESOLUTION = 10000;
+    private final RefreshActionItem mItem;
+    private final CopyOnWriteArrayList<Subtask> mSubtasks = new CopyOnWriteArrayList<Subtask>();
+    private final FrameCoalescer mUpdater = new FrameCoalescer(new Runnable() {
+        @Override
+        public void run() {
+            applyProgress();
+        }
+    });
+
+    public ProgressAggregator(RefreshActionItem item) {
+        mItem = item;
+    }
+
+    /**
+     * Adds a subtask whose size is not known yet. It counts as no progress at all until
+     * its size is set or it is completed
+     * 
+     * @param weight
+     *            How much the subtask contributes to the whole operation, relative to the
+     *            rest of subtasks
+     */
+    public Subtask newSubtask(float weight) {
+        return newSubtask(weight, Subtask.UNKNOWN_SIZE);
+    }
+
+    /**
+     * Adds a subtask of the given size, in whatever unit its progress is measured
+     * 
+     * @param weight
+     *            How much the subtask contributes to the whole operation, relative to the
+     *            rest of subtasks
+     */
+    public Subtask newSubtask(float weight, long size) {
+        Subtask subtask = new Subtask(this, weight, size);
+        mSubtasks.add(subtask);
+        mUpdater.schedule();
+        return subtask;
+    }
+
+    /**
+     * Returns the combined progress of all the subtasks, between 0 and 1
+     */
+    public float getFraction() {
+        float totalWeight = 0;
+        float weightedFraction = 0;
+        for (Subtask subtask : mSubtasks) {
+            totalWeight += subtask.mWeight;
+            weightedFraction += subtask.mWeight * subtask.getFraction();
+        }
+        return totalWeight > 0 ? weightedFraction / totalWeight : 0;
+    }
+
+    private void applyProgress() {
+        if (mItem.getMax() != RESOLUTION) {
+            mItem.setMax(RESOLUTION);
+        }
+        mItem.setProgress(Math.round(getFraction() * RESOLUTION));
+    }
+
+    /**
+     * The progress of a single subtask. Its methods can be called from any thread
+     */
+    public static final class Subtask {
+        static final long UNKNOWN_SIZE = -1;
+        private final ProgressAggregator mAggregator;
+        private final float mWeight;
+        private volatile long mSize;
+        private volatile boolean mComplete;
+        private final AtomicLong mProgress = new AtomicLong();
+
+        private Subtask(ProgressAggregator aggregator, float weight, long size) {
+            mAggregator = aggregator;
+            mWeight = weight;
+            mSize = size;
+        }
+
+        public void setSize(long size) {
+            mSize = size;
+            mAggregator.mUpdater.schedule();
+        }
+
+        public void setProgress(long progress) {
+            mProgress.set(progress);
+            mAggregator.mUpdater.schedule();
+        }
+
+        public void incrementProgressBy(long diff) {
+            mProgress.addAndGet(diff);
+            mAggregator.mUpdater.schedule();
+        }
+
+        /**
+         * Marks the subtask as done, no matter what its progress is
+         */
+        public void complete() {
+            mComplete = true;
+            mAggregator.mUpdater.schedule();
+        }
+
+        public boolean isComplete() {
+            return mComplete;
+        }
+
+        /**
+         * Returns the progress of this subtask, between 0 and 1
+         */
+        public float getFraction() {
+            if (mComplete) {
+                return 1;
+            }
+            long size = mSize;
+            if (size <= 0) {
+                return 0;
+            }
+            return Math.min(1, Math.max(0, mProgress.get() / (float) size));
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2013 Manuel Peinado
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.manuelpeinado.refreshactionitem;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.RectF;
+
+/**
+ * Geometry and paints of the "wheel" and "pie" progress indicators, shared by
+ * {@link ProgressIndicator} and {@link FlatRefreshActionItem} so that both draw exactly
+ * the same thing.
+ * <p>
+ * Everything is drawn with plain arcs and lines, without erasing anything, so it works on
+ * any canvas, including hardware accelerated ones.
+ */
+final class ProgressArcPainter {
+    /**
+     * Below this value a line from the center to the top marks where progress starts
+     */
+    private static final float MARKER_THRESHOLD = 0.01f;
+    private final RectF mRect = new RectF();
+    private final RectF mRectInner = new RectF();
+    // The "wheel" style is drawn as a ring, whose stroke runs halfway between both radiuses
+    private final RectF mRectRing = new RectF();
+    private final Paint mPaintForeground = new Paint();
+    private final Paint mPaintBackground = new Paint();
+    private final Paint mPaintForegroundRing = new Paint();
+    private final Paint mPaintBackgroundRing = new Paint();
+
+    ProgressArcPainter() {
+        mPaintForeground.setAntiAlias(true);
+        mPaintBackground.setAntiAlias(true);
+        mPaintForegroundRing.setAntiAlias(true);
+        mPaintForegroundRing.setStyle(Paint.Style.STROKE);
+        mPaintBackgroundRing.setAntiAlias(true);
+        mPaintBackgroundRing.setStyle(Paint.Style.STROKE);
+    }
+
+    void setForegroundColor(int color) {
+        mPaintForeground.setColor(color);
+        mPaintForegroundRing.setColor(color);
+    }
+
+    void setBackgroundColor(int color) {
+        mPaintBackground.setColor(color);
+        mPaintBackgroundRing.setColor(color);
+    }
+
+    /**
+     * Set the rectangle the indicator is drawn into
+     */
+    void setBounds(float left, float top, float right, float bottom) {
+        mRect.set(left, top, right, bottom);
+        float radius = Math.min(mRect.width(), mRect.height()) / 2;
+        float innerRadius = radius * ProgressIndicator.INNER_RADIUS_RATIO;
+        mRectInner.set(mRect.centerX() - innerRadius, mRect.centerY() - innerRadius,
+                       mRect.centerX() + innerRadius, mRect.centerY() + innerRadius);
+        float ringThickness = radius - innerRadius;
+        mRectRing.set(mRect);
+        mRectRing.inset(ringThickness / 2, ringThickness / 2);
+        mPaintForegroundRing.setStrokeWidth(ringThickness);
+        mPaintBackgroundRing.setStrokeWidth(ringThickness);
+    }
+
+    RectF getBounds() {
+        return mRect;
+    }
+
+    /**
+     * Returns the bounds of the hole in the middle of the "wheel" style
+     */
+    RectF getInnerBounds() {
+        return mRectInner;
+    }
+
+    Paint getForegroundPaint() {
+        return mPaintForeground;
+    }
+
+    Paint getBackgroundPaint() {
+        return mPaintBackground;
+    }
+
+    /**
+     * Whether the marker line is drawn for the given value
+     */
+    static boolean hasMarker(float value) {
+        return value < MARKER_THRESHOLD;
+    }
+
+    /**
+     * @param value A number between 0 and 1
+     */
+    void draw(Canvas canvas, float value, boolean pieStyle) {
+        if (pieStyle) {
+            drawPie(canvas, value);
+        } else {
+            drawRing(canvas, value);
+        }
+    }
+
+    void drawPie(Canvas canvas, float value) {
+        canvas.drawArc(mRect, -90, 360, true, mPaintBackground);
+        if (hasMarker(value)) {
+            canvas.drawLine(mRect.centerX(), mRect.centerY(), mRect.centerX(), mRect.top, mPaintForeground);
+        }
+        canvas.drawArc(mRect, -90, value * 360, true, mPaintForeground);
+    }
+
+    private void drawRing(Canvas canvas, float value) {
+        canvas.drawArc(mRectRing, -90, 360, false, mPaintBackgroundRing);
+        if (hasMarker(value)) {
+            canvas.drawLine(mRect.centerX(), mRectInner.top, mRect.centerX(), mRect.top, mPaintForeground);
+        }
+        canvas.drawArc(mRectRing, -90, value * 360, false, mPaintForegroundRing);
+    }
+
+    /**
+     * Draws the spinning arc of the indeterminate mode
+     * 
+     * @param rotation See {@link ProgressIndicator#getIndeterminateRotation(long)}
+     * @param sweep See {@link ProgressIndicator#getIndeterminateSweep(long)}
+     */
+    void drawIndeterminate(Canvas canvas, float rotation, float sweep, boolean pieStyle) {
+        if (pieStyle) {
+            canvas.drawArc(mRect, -90, 360, true, mPaintBackground);
+            canvas.drawArc(mRect, rotation - 90, sweep, true, mPaintForeground);
+        } else {
+            canvas.drawArc(mRectRing, -90, 360, false, mPaintBackgroundRing);
+            canvas.drawArc(mRectRing, rotation - 90, sweep, false, mPaintForegroundRing);
+        }
+    }
+}
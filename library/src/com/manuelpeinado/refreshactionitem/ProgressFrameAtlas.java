@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2013 Manuel Peinado
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.manuelpeinado.refreshactionitem;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
+import android.graphics.RectF;
+import android.support.v4.util.LruCache;
+
+/**
+ * Process-wide cache of pre-rendered frames for the determinate progress indicator, used
+ * by {@link ProgressIndicatorRenderMode#ATLAS}.
+ * <p>
+ * Progress values are quantized to {@link #FRAME_COUNT} steps. Each frame is stored as an
+ * alpha-only mask which is tinted with the indicator colors at draw time, so indicators
+ * which only differ in color share the same frames. Frames are rendered lazily the
+ * first time they are needed and evicted in LRU order once {@link #MAX_BYTES} is exceeded.
+ */
+final class ProgressFrameAtlas {
+    /**
+     * Number of distinct progress values that can be displayed
+     */
+    static final int FRAME_COUNT = 360;
+    /**
+     * Index of the frame holding the background of the indicator (a full disc or ring)
+     */
+    static final int BACKGROUND_FRAME = -1;
+    /**
+     * Memory budget for the whole cache. A full set of frames for a typical action
+     * bar indicator on an xhdpi device takes around 1.5MB
+     */
+    private static final int MAX_BYTES = 2 * 1024 * 1024;
+
+    private static final LruCache<FrameKey, Bitmap> sFrames = new LruCache<FrameKey, Bitmap>(MAX_BYTES) {
+        @Override
+        protected int sizeOf(FrameKey key, Bitmap frame) {
+            return frame.getRowBytes() * frame.getHeight();
+        }
+    };
+    // Lookups reuse this key so that a cache hit doesn't allocate anything
+    private static final FrameKey sProbe = new FrameKey();
+    private static final RectF sRect = new RectF();
+    private static final RectF sRectInner = new RectF();
+    private static final Paint sPaintMask = new Paint();
+    private static final Paint sPaintErase = new Paint();
+
+    static {
+        sPaintMask.setAntiAlias(true);
+        sPaintErase.setAntiAlias(true);
+        sPaintErase.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.CLEAR));
+    }
+
+    private ProgressFrameAtlas() {
+    }
+
+    /**
+     * @param value A number between 0 and 1
+     * @return The index of the frame which best represents the given value
+     */
+    static int getFrameIndex(float value) {
+        int index = Math.round(value * FRAME_COUNT);
+        return Math.max(0, Math.min(FRAME_COUNT, index));
+    }
+
+    /**
+     * Returns the requested frame, rendering it first if it is not cached. The returned
+     * bitmap has the {@link Bitmap.Config#ALPHA_8} config and should be drawn with a paint
+     * of the desired color
+     * 
+     * @param frameIndex A value returned by {@link #getFrameIndex(float)}, or {@link #BACKGROUND_FRAME}
+     * @param counters Where the frame is counted if it has to be rendered
+     */
+    static synchronized Bitmap getFrame(int width, int height, boolean pieStyle, float innerRadiusRatio, int frameIndex,
+            RenderingCounters counters) {
+        sProbe.set(width, height, pieStyle, innerRadiusRatio, frameIndex);
+        Bitmap frame = sFrames.get(sProbe);
+        if (frame == null) {
+            frame = renderFrame(width, height, pieStyle, innerRadiusRatio, frameIndex);
+            // 1 byte per pixel
+            counters.bitmapAllocated((long) width * height);
+            FrameKey key = new FrameKey();
+            key.set(width, height, pieStyle, innerRadiusRatio, frameIndex);
+            sFrames.put(key, frame);
+        }
+        return frame;
+    }
+
+    /**
+     * Drops every cached frame. Useful in response to low memory conditions
+     */
+    static void evictAll() {
+        sFrames.evictAll();
+    }
+
+    private static Bitmap renderFrame(int width, int height, boolean pieStyle, float innerRadiusRatio, int frameIndex) {
+        Bitmap frame = Bitmap.createBitmap(width, height, Bitmap.Config.ALPHA_8);
+        Canvas canvas = new Canvas(frame);
+        sRect.set(0, 0, width, height);
+        float radius = Math.min(width / 2f, height / 2f) * innerRadiusRatio;
+        sRectInner.set(width / 2f - radius, height / 2f - radius, width / 2f + radius, height / 2f + radius);
+        if (frameIndex == BACKGROUND_FRAME) {
+            canvas.drawArc(sRect, -90, 360, true, sPaintMask);
+        } else {
+            float value = frameIndex / (float) FRAME_COUNT;
+            if (value < 0.01f) {
+                canvas.drawLine(width / 2f, height / 2f, width / 2f, 0, sPaintMask);
+            }
+            canvas.drawArc(sRect, -90, value * 360, true, sPaintMask);
+        }
+        if (!pieStyle) {
+            canvas.drawArc(sRectInner, -90, 360, true, sPaintErase);
+        }
+        return frame;
+    }
+
+    private static final class FrameKey {
+        private int mWidth;
+        private int mHeight;
+        private boolean mPieStyle;
+        private float mInnerRadiusRatio;
+        private int mFrameIndex;
+
+        void set(int width, int height, boolean pieStyle, float innerRadiusRatio, int frameIndex) {
+            mWidth = width;
+            mHeight = height;
+            mPieStyle = pieStyle;
+            mInnerRadiusRatio = innerRadiusRatio;
+            mFrameIndex = frameIndex;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof FrameKey)) {
+                return false;
+            }
+            FrameKey other = (FrameKey) o;
+            return mWidth == other.mWidth && mHeight == other.mHeight && mPieStyle == other.mPieStyle
+                    && mInnerRadiusRatio == other.mInnerRadiusRatio && mFrameIndex == other.mFrameIndex;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = mWidth;
+            result = 31 * result + mHeight;
+            result = 31 * result + (mPieStyle ? 1 : 0);
+            result = 31 * result + Float.floatToIntBits(mInnerRadiusRatio);
+            result = 31 * result + mFrameIndex;
+            return result;
+        }
+    }
+}
@@ -25,6 +25,7 @@ import android.graphics.PorterDuff;
 import android.graphics.PorterDuffXfermode;
 import android.graphics.RectF;
 import android.graphics.Xfermode;
+import android.os.SystemClock;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.view.View;
@@ -32,31 +33,91 @@ import android.view.View;
 /**
  * Class used internally by {@link RefreshActionItem} to show a determinate progress
  * indicator. Two display modes are supported "wheel" and "pie" 
+ * <p>
+ * It can also work as a lightweight indeterminate progress indicator, showing an arc
+ * which spins around the wheel or pie while its length grows and shrinks
  */
 class ProgressIndicator extends View {
-    private final RectF mRect = new RectF();
-    private final RectF mRectInner = new RectF();
-    private final Paint mPaintForeground = new Paint();
-    private final Paint mPaintBackground = new Paint();
+    private final ProgressArcPainter mPainter = new ProgressArcPainter();
+    // Both owned by mPainter. The indicator is drawn with its top left corner at the origin
+    private final RectF mRect = mPainter.getBounds();
+    private final RectF mRectInner = mPainter.getInnerBounds();
     private final Paint mPaintErase = new Paint();
     private static final Xfermode PORTER_DUFF_CLEAR = new PorterDuffXfermode(PorterDuff.Mode.CLEAR);
     private int mColorForeground = Color.WHITE;
     private int mColorBackground = Color.BLACK;
     private float mValue;
+    private float mTargetValue;
+    private boolean mSmoothProgress;
+    private boolean mAnimating;
+    private long mLastAnimationStepTime;
+    private final FrameCoalescer mAnimator = new FrameCoalescer(new Runnable() {
+        @Override
+        public void run() {
+            stepAnimation();
+        }
+    });
+    /**
+     * Time it takes the smooth progress animation to cover ~63% of the distance
+     * to its target. Unit: milliseconds
+     */
+    private static final long SMOOTH_PROGRESS_TIME_CONSTANT = 120;
+    /**
+     * Longest time a single animation step can account for, so that the wheel doesn't
+     * jump ahead after a frame that took too long. Unit: milliseconds
+     */
+    private static final long MAX_ANIMATION_STEP = 2 * FrameCoalescer.FRAME_INTERVAL;
+    /**
+     * The animation snaps to its target once it is closer than this. Unit: pixels
+     */
+    private static final float ANIMATION_SNAP_DISTANCE = 0.5f;
+    private final RectF mDirtyRect = new RectF();
+    /**
+     * Extra space around the changed part of the arc which is also repainted, so that
+     * anti-aliased edges are properly updated. Unit: pixels
+     */
+    private static final float DIRTY_RECT_MARGIN = 2;
     private boolean mPieStyle;
+    private boolean mIndeterminate;
+    private boolean mShowPercentage;
+    private final Paint mPaintPercentage = new Paint();
+    private TextMeasureCache mPercentageMeasureCache;
+    /**
+     * Size of the percentage label, relative to the inner radius of the wheel
+     */
+    private static final float PERCENTAGE_TEXT_SIZE_RATIO = 0.6f;
+    /**
+     * Time it takes the indeterminate arc to do a full turn. Unit: milliseconds
+     */
+    private static final long INDETERMINATE_ROTATION_PERIOD = 1600;
+    /**
+     * Time it takes the indeterminate arc to grow and shrink back. Unit: milliseconds
+     */
+    private static final long INDETERMINATE_SWEEP_PERIOD = 2400;
+    private static final float INDETERMINATE_MIN_SWEEP = 20;
+    private static final float INDETERMINATE_MAX_SWEEP = 270;
+    /**
+     * The indeterminate animation is capped to 30 fps, which is smooth enough for such a
+     * small indicator. Unit: milliseconds
+     */
+    static final long INDETERMINATE_FRAME_INTERVAL = 1000 / 30;
+    private ProgressIndicatorRenderMode mRenderMode = ProgressIndicatorRenderMode.BITMAP;
     /**
      * Value which makes our custom drawn indicator have roughly the same size
      * as the built-in ProgressBar indicator. Unit: dp
      */
-    private static final float PADDING = 4;
+    static final float PADDING = 4;
     private float mPadding;
     private Bitmap mBitmap;
+    // Set while the bitmap lags behind a smooth progress animation, which is drawn directly
+    private boolean mBitmapStale;
+    private RenderingCounters mCounters = new RenderingCounters();
     /**
      * Value which makes our custom drawn indicator have roughly the same
      * thickness as the built-in ProgressBar indicator. Expressed as the ration
      * between the inner and outer radiuses
      */
-    private static final float INNER_RADIUS_RATIO = 0.84f;
+    static final float INNER_RADIUS_RATIO = 0.84f;
 
     public ProgressIndicator(Context context) {
         this(context, null);
@@ -67,12 +128,12 @@ class ProgressIndicator extends View {
         Resources r = context.getResources();
         float scale = r.getDisplayMetrics().density;
         mPadding = scale * PADDING + r.getDimension(R.dimen.abs__action_bar_icon_vertical_padding);
-        mPaintForeground.setColor(mColorForeground);
-        mPaintForeground.setAntiAlias(true);
-        mPaintBackground.setColor(mColorBackground);
-        mPaintBackground.setAntiAlias(true);
+        mPainter.setForegroundColor(mColorForeground);
+        mPainter.setBackgroundColor(mColorBackground);
         mPaintErase.setXfermode(PORTER_DUFF_CLEAR);
         mPaintErase.setAntiAlias(true);
+        mPaintPercentage.setColor(mColorForeground);
+        mPaintPercentage.setAntiAlias(true);
     }
 
     /**
@@ -84,7 +145,7 @@ class ProgressIndicator extends View {
             return;
         }
         mPieStyle = pieStyle;
-        updateBitmap();
+        redraw();
     }
 
     /**
@@ -96,21 +157,200 @@ class ProgressIndicator extends View {
         return mPieStyle;
     }
 
+    /**
+     * Switches between showing a specific value and just spinning to give the
+     * impression that the app is working
+     */
+    public void setIndeterminate(boolean indeterminate) {
+        if (mIndeterminate == indeterminate) {
+            return;
+        }
+        mIndeterminate = indeterminate;
+        redraw();
+    }
+
+    public boolean isIndeterminate() {
+        return mIndeterminate;
+    }
+
+    /**
+     * Shows or hides a label with the progress percentage in the center of the indicator.
+     * The label is only shown in the "wheel" style
+     */
+    public void setShowPercentage(boolean showPercentage) {
+        if (mShowPercentage == showPercentage) {
+            return;
+        }
+        mShowPercentage = showPercentage;
+        updatePercentageMeasureCache();
+        mCounters.invalidations.incrementAndGet();
+        postInvalidate();
+    }
+
+    private void updatePercentageMeasureCache() {
+        // The caches are shared and kept around, so don't create one for a hidden label
+        if (mShowPercentage && mRect.width() > 0) {
+            mPercentageMeasureCache = TextMeasureCache.forPaint(mPaintPercentage);
+        } else {
+            mPercentageMeasureCache = null;
+        }
+    }
+
+    public boolean isShowPercentage() {
+        return mShowPercentage;
+    }
+
+    /**
+     * Set the strategy used to render this indicator
+     * @param renderMode One of {@link ProgressIndicatorRenderMode#BITMAP},
+     *                   {@link ProgressIndicatorRenderMode#DIRECT} or
+     *                   {@link ProgressIndicatorRenderMode#ATLAS}
+     */
+    public void setRenderMode(ProgressIndicatorRenderMode renderMode) {
+        if (mRenderMode == renderMode) {
+            return;
+        }
+        mRenderMode = renderMode;
+        // The bitmap is only kept around while in bitmap mode
+        mBitmap = null;
+        mBitmapStale = false;
+        redraw();
+    }
+
+    public ProgressIndicatorRenderMode getRenderMode() {
+        return mRenderMode;
+    }
+
+    /**
+     * Makes the indicator count its rendering work in the given counters, usually the ones
+     * of the action item that owns it
+     */
+    void setRenderingCounters(RenderingCounters counters) {
+        mCounters = counters;
+    }
+
     @Override
     protected void onDraw(Canvas canvas) {
-        canvas.drawBitmap(mBitmap, getWidth() / 2 - mBitmap.getWidth() / 2, 
-                          getHeight() / 2 - mBitmap.getHeight() / 2, null);
+        mCounters.draws.incrementAndGet();
+        if (mIndeterminate) {
+            drawIndeterminate(canvas);
+            return;
+        }
+        if (mRenderMode == ProgressIndicatorRenderMode.DIRECT) {
+            drawDirect(canvas);
+        } else if (mRenderMode == ProgressIndicatorRenderMode.ATLAS) {
+            drawFromAtlas(canvas);
+        } else if (mBitmapStale) {
+            drawDirect(canvas);
+        } else if (mBitmap != null) {
+            canvas.drawBitmap(mBitmap, getWidth() / 2 - mBitmap.getWidth() / 2, 
+                              getHeight() / 2 - mBitmap.getHeight() / 2, null);
+        }
+        if (mShowPercentage && !mPieStyle) {
+            drawPercentage(canvas);
+        }
+    }
+
+    private void drawPercentage(Canvas canvas) {
+        if (mPercentageMeasureCache == null) {
+            return;
+        }
+        String text = TextMeasureCache.getPercentText((int) (mValue * 100));
+        float x = getWidth() / 2f - mPercentageMeasureCache.measureText(text) / 2;
+        float y = getHeight() / 2f - (mPercentageMeasureCache.getAscent() + mPercentageMeasureCache.getDescent()) / 2;
+        canvas.drawText(text, x, y, mPaintPercentage);
+    }
+
+    private void drawDirect(Canvas canvas) {
+        if (mRect.width() <= 0) {
+            return;
+        }
+        int saveCount = canvas.save();
+        canvas.translate(getWidth() / 2 - (int) mRect.width() / 2, getHeight() / 2 - (int) mRect.height() / 2);
+        // Unlike drawIndicator() this doesn't erase anything, so it works on any canvas
+        mPainter.draw(canvas, mValue, mPieStyle);
+        canvas.restoreToCount(saveCount);
+    }
+
+    private void drawIndeterminate(Canvas canvas) {
+        if (mRect.width() <= 0) {
+            return;
+        }
+        long time = SystemClock.uptimeMillis();
+        float rotation = getIndeterminateRotation(time);
+        float sweep = getIndeterminateSweep(time);
+        int saveCount = canvas.save();
+        canvas.translate(getWidth() / 2 - (int) mRect.width() / 2, getHeight() / 2 - (int) mRect.height() / 2);
+        mPainter.drawIndeterminate(canvas, rotation, sweep, mPieStyle);
+        canvas.restoreToCount(saveCount);
+        if (isAnimationVisible()) {
+            // The next frame is only scheduled while someone can see it
+            mCounters.invalidations.incrementAndGet();
+            postInvalidateDelayed(INDETERMINATE_FRAME_INTERVAL);
+        }
+    }
+
+    /**
+     * @return The angle the indeterminate arc has rotated at the given time, in degrees
+     */
+    static float getIndeterminateRotation(long time) {
+        return (time % INDETERMINATE_ROTATION_PERIOD) * 360f / INDETERMINATE_ROTATION_PERIOD;
+    }
+
+    /**
+     * @return The length of the indeterminate arc at the given time, in degrees
+     */
+    static float getIndeterminateSweep(long time) {
+        double sweepPhase = (time % INDETERMINATE_SWEEP_PERIOD) * 2 * Math.PI / INDETERMINATE_SWEEP_PERIOD;
+        return INDETERMINATE_MIN_SWEEP
+                + (INDETERMINATE_MAX_SWEEP - INDETERMINATE_MIN_SWEEP) * (float) (1 - Math.cos(sweepPhase)) / 2;
+    }
+
+    private boolean isAnimationVisible() {
+        return getVisibility() == View.VISIBLE && getWindowVisibility() == View.VISIBLE && isShown();
+    }
+
+    @Override
+    protected void onVisibilityChanged(View changedView, int visibility) {
+        super.onVisibilityChanged(changedView, visibility);
+        if (mIndeterminate && visibility == View.VISIBLE) {
+            // Resume the indeterminate animation
+            mCounters.invalidations.incrementAndGet();
+            invalidate();
+        }
+    }
+
+    @Override
+    protected void onWindowVisibilityChanged(int visibility) {
+        super.onWindowVisibilityChanged(visibility);
+        if (mIndeterminate && visibility == View.VISIBLE) {
+            mCounters.invalidations.incrementAndGet();
+            invalidate();
+        }
+    }
+
+    private void drawFromAtlas(Canvas canvas) {
+        int width = (int) mRect.width();
+        int height = (int) mRect.height();
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+        int left = getWidth() / 2 - width / 2;
+        int top = getHeight() / 2 - height / 2;
+        Bitmap background = ProgressFrameAtlas.getFrame(width, height, mPieStyle, INNER_RADIUS_RATIO,
+                ProgressFrameAtlas.BACKGROUND_FRAME, mCounters);
+        canvas.drawBitmap(background, left, top, mPainter.getBackgroundPaint());
+        Bitmap foreground = ProgressFrameAtlas.getFrame(width, height, mPieStyle, INNER_RADIUS_RATIO,
+                ProgressFrameAtlas.getFrameIndex(mValue), mCounters);
+        canvas.drawBitmap(foreground, left, top, mPainter.getForegroundPaint());
     }
 
     @Override
     protected void onSizeChanged(int w, int h, int oldw, int oldh) {
-        float bitmapWidth = w - 2 * mPadding;
-        float bitmapHeight = h - 2 * mPadding;
-        float radius = Math.min(bitmapWidth / 2, bitmapHeight / 2);
-        mRect.set(0, 0, bitmapWidth, bitmapHeight);
-        radius *= INNER_RADIUS_RATIO;
-        mRectInner.set(bitmapWidth / 2f - radius, bitmapHeight / 2f - radius, bitmapWidth / 2f + radius, bitmapHeight / 2f + radius);
-        updateBitmap();
+        mPainter.setBounds(0, 0, w - 2 * mPadding, h - 2 * mPadding);
+        mPaintPercentage.setTextSize(mRectInner.width() / 2 * PERCENTAGE_TEXT_SIZE_RATIO);
+        updatePercentageMeasureCache();
+        redraw();
     }
 
     /**
@@ -119,7 +359,9 @@ class ProgressIndicator extends View {
      */
     public void setForegroundColor(int color) {
         this.mColorForeground = color;
-        mPaintForeground.setColor(color);
+        mPainter.setForegroundColor(color);
+        mPaintPercentage.setColor(color);
+        mCounters.invalidations.incrementAndGet();
         invalidate();
     }
     
@@ -129,16 +371,233 @@ class ProgressIndicator extends View {
      */
     public void setBackgroundColor(int color) {
         this.mColorBackground = color;
-        mPaintBackground.setColor(color);
+        mPainter.setBackgroundColor(color);
+        mCounters.invalidations.incrementAndGet();
         invalidate();
     }
 
+    /**
+     * Enables or disables the smooth progress mode. When enabled, instead of jumping
+     * to each new value the indicator eases towards it over the next few frames.
+     * Progress going backwards is always displayed immediately.
+     * <p>
+     * In {@link ProgressIndicatorRenderMode#BITMAP} mode the frames in between are drawn
+     * directly, and the bitmap is only rasterized once the animation reaches its target
+     */
+    public synchronized void setSmoothProgress(boolean smoothProgress) {
+        mSmoothProgress = smoothProgress;
+        if (!smoothProgress && mAnimating) {
+            mAnimator.cancel();
+            mAnimating = false;
+            applyValue(mTargetValue, false);
+        }
+    }
+
+    public boolean isSmoothProgress() {
+        return mSmoothProgress;
+    }
+
     /**
      * @param value A number between 0 and 1
      */
     public synchronized void setValue(float value) {
+        mTargetValue = value;
+        // There is nothing to animate until the indicator has a size
+        if (mSmoothProgress && value > mValue && mRect.width() > 0) {
+            if (!mAnimating) {
+                mAnimating = true;
+                mLastAnimationStepTime = SystemClock.uptimeMillis() - FrameCoalescer.FRAME_INTERVAL;
+            }
+            mAnimator.schedule();
+            return;
+        }
+        if (mAnimating) {
+            mAnimator.cancel();
+            mAnimating = false;
+        }
+        applyValue(value, false);
+    }
+
+    private synchronized void stepAnimation() {
+        if (!mAnimating) {
+            return;
+        }
+        long now = SystemClock.uptimeMillis();
+        long elapsed = Math.min(now - mLastAnimationStepTime, MAX_ANIMATION_STEP);
+        mLastAnimationStepTime = now;
+        float fraction = 1 - (float) Math.exp(-elapsed / (double) SMOOTH_PROGRESS_TIME_CONSTANT);
+        float value = mValue + (mTargetValue - mValue) * fraction;
+        float distance = getArcLength(mTargetValue - value);
+        if (distance < ANIMATION_SNAP_DISTANCE || Float.isInfinite(distance)) {
+            value = mTargetValue;
+        }
+        applyValue(value, value != mTargetValue);
+        if (value == mTargetValue) {
+            mAnimating = false;
+        } else {
+            mAnimator.schedule();
+        }
+    }
+
+    /**
+     * @param intermediate Whether the value is just a step of the smooth progress animation
+     */
+    private void applyValue(float value, boolean intermediate) {
+        float oldValue = mValue;
         mValue = value;
-        updateBitmap();
+        boolean percentageChanged = mShowPercentage && !mPieStyle && (int) (oldValue * 100) != (int) (value * 100);
+        if (mRenderMode == ProgressIndicatorRenderMode.ATLAS) {
+            int oldFrame = ProgressFrameAtlas.getFrameIndex(oldValue);
+            int newFrame = ProgressFrameAtlas.getFrameIndex(value);
+            if (oldFrame == newFrame) {
+                // Same frame as before, only the label can change on screen
+                if (percentageChanged) {
+                    countAppliedValue(intermediate);
+                    invalidatePercentage();
+                }
+                return;
+            }
+            oldValue = oldFrame / (float) ProgressFrameAtlas.FRAME_COUNT;
+            value = newFrame / (float) ProgressFrameAtlas.FRAME_COUNT;
+        } else if (mRenderMode == ProgressIndicatorRenderMode.BITMAP) {
+            if (intermediate) {
+                // Rasterizing every frame of the animation would allocate a bitmap each time
+                mBitmapStale = true;
+            } else if (mBitmapStale) {
+                updateBitmap();
+                // The directly drawn frames don't match the bitmap pixel by pixel
+                mCounters.progressUpdatesRendered.incrementAndGet();
+                mCounters.invalidations.incrementAndGet();
+                postInvalidate();
+                return;
+            } else {
+                updateBitmap();
+            }
+        }
+        countAppliedValue(intermediate);
+        invalidateArc(oldValue, value, percentageChanged);
+    }
+
+    /**
+     * Only the values the indicator was asked to show count as rendered progress updates,
+     * so that they can be compared with the ones received. Animation steps are counted apart
+     */
+    private void countAppliedValue(boolean intermediate) {
+        if (intermediate) {
+            mCounters.smoothProgressFrames.incrementAndGet();
+        } else {
+            mCounters.progressUpdatesRendered.incrementAndGet();
+        }
+    }
+
+    /**
+     * Invalidates the bounding box of the part of the indicator that changes when going
+     * from one value to the other, instead of the whole view
+     * 
+     * @param percentageChanged Whether the percentage label has to be repainted as well
+     */
+    private void invalidateArc(float fromValue, float toValue, boolean percentageChanged) {
+        if (mRect.width() <= 0 || Float.isNaN(fromValue) || Float.isNaN(toValue)) {
+            mCounters.invalidations.incrementAndGet();
+            postInvalidate();
+            return;
+        }
+        float startAngle = -90 + Math.min(fromValue, toValue) * 360;
+        float endAngle = -90 + Math.max(fromValue, toValue) * 360;
+        float cx = mRect.width() / 2;
+        float cy = mRect.height() / 2;
+        float innerRadius = mRectInner.width() / 2;
+        if (mPieStyle) {
+            mDirtyRect.set(cx, cy, cx, cy);
+        } else {
+            // The center is not part of a wheel, only the ring between both radiuses
+            float x = getArcX(cx, innerRadius, startAngle);
+            float y = getArcY(cy, innerRadius, startAngle);
+            mDirtyRect.set(x, y, x, y);
+            unionArcPoint(cx, cy, startAngle, endAngle, innerRadius, innerRadius);
+        }
+        unionArcPoint(cx, cy, startAngle, endAngle, cx, cy);
+        // Points where the outer edge of the arc reaches its extremes
+        for (int angle = -90; angle <= 270; angle += 90) {
+            if (angle > startAngle && angle < endAngle) {
+                mDirtyRect.union(getArcX(cx, cx, angle), getArcY(cy, cy, angle));
+            }
+        }
+        if (ProgressArcPainter.hasMarker(Math.min(fromValue, toValue))) {
+            // The line drawn for tiny values goes from the center to the top
+            mDirtyRect.union(cx, cy);
+            mDirtyRect.union(cx, 0);
+        }
+        if (percentageChanged) {
+            // The percentage label fits inside the inner circle
+            mDirtyRect.union(mRectInner.left, mRectInner.top);
+            mDirtyRect.union(mRectInner.right, mRectInner.bottom);
+        }
+        postInvalidateDirtyRect();
+    }
+
+    private void invalidatePercentage() {
+        if (mRect.width() <= 0) {
+            mCounters.invalidations.incrementAndGet();
+            postInvalidate();
+            return;
+        }
+        mDirtyRect.set(mRectInner);
+        postInvalidateDirtyRect();
+    }
+
+    /**
+     * Invalidates {@link #mDirtyRect}, which is relative to the top left corner of
+     * {@link #mRect}, plus a small margin
+     */
+    private void postInvalidateDirtyRect() {
+        mDirtyRect.inset(-DIRTY_RECT_MARGIN, -DIRTY_RECT_MARGIN);
+        mDirtyRect.offset(getWidth() / 2 - (int) mRect.width() / 2, getHeight() / 2 - (int) mRect.height() / 2);
+        mCounters.invalidations.incrementAndGet();
+        postInvalidate((int) Math.floor(mDirtyRect.left), (int) Math.floor(mDirtyRect.top),
+                       (int) Math.ceil(mDirtyRect.right), (int) Math.ceil(mDirtyRect.bottom));
+    }
+
+    /**
+     * Extends the dirty rect to include the points at both ends of the arc, on an oval with
+     * the given radii centered in the indicator
+     */
+    private void unionArcPoint(float cx, float cy, float startAngle, float endAngle, float radiusX, float radiusY) {
+        mDirtyRect.union(getArcX(cx, radiusX, startAngle), getArcY(cy, radiusY, startAngle));
+        mDirtyRect.union(getArcX(cx, radiusX, endAngle), getArcY(cy, radiusY, endAngle));
+    }
+
+    private static float getArcX(float cx, float radiusX, float angle) {
+        return cx + radiusX * (float) Math.cos(Math.toRadians(angle));
+    }
+
+    private static float getArcY(float cy, float radiusY, float angle) {
+        return cy + radiusY * (float) Math.sin(Math.toRadians(angle));
+    }
+
+    /**
+     * Returns how far, in pixels along the outer edge of the indicator, the end of the
+     * arc would move if the given value was set. In smooth progress mode the distance
+     * is measured from the value the indicator is animating to. If the indicator has
+     * not been laid out yet there is no way to tell, so infinity is returned
+     * 
+     * @param value A number between 0 and 1
+     */
+    public synchronized float getArcDistance(float value) {
+        return getArcLength(value - mTargetValue);
+    }
+
+    private float getArcLength(float valueDelta) {
+        return ProgressPublisher.getArcLength(valueDelta, Math.min(mRect.width(), mRect.height()) / 2);
+    }
+
+    private void redraw() {
+        if (mRenderMode == ProgressIndicatorRenderMode.BITMAP) {
+            updateBitmap();
+        }
+        // Otherwise there is nothing to rasterize up front, onDraw() takes care of everything
+        mCounters.invalidations.incrementAndGet();
+        postInvalidate();
     }
 
     private void updateBitmap() {
@@ -146,16 +605,22 @@ class ProgressIndicator extends View {
             return;
         }
         mBitmap = Bitmap.createBitmap((int) mRect.width(), (int) mRect.height(), Bitmap.Config.ARGB_8888);
+        // 4 bytes per pixel
+        mCounters.bitmapAllocated(4L * mBitmap.getWidth() * mBitmap.getHeight());
         Canvas canvas = new Canvas(mBitmap);
-        canvas.drawArc(mRect, -90, 360, true, mPaintBackground);
-        if (mValue < 0.01f) {
-            canvas.drawLine(mRect.width() / 2, mRect.height() / 2, mRect.width() / 2, 0, mPaintForeground);
-        }
-        float angle = mValue * 360;
-        canvas.drawArc(mRect, -90, angle, true, mPaintForeground);
+        drawIndicator(canvas);
+        mBitmapStale = false;
+    }
+
+    /**
+     * Draws the indicator into the given canvas, whose origin must be at the top left corner
+     * of {@link #mRect}. In the "wheel" style the canvas must be backed by a bitmap or a layer,
+     * as the inner part of the wheel is erased
+     */
+    private void drawIndicator(Canvas canvas) {
+        mPainter.drawPie(canvas, mValue);
         if (!mPieStyle) {
             canvas.drawArc(mRectInner, -90, 360, true, mPaintErase);
         }
-        postInvalidate();
     }
 }
@@ -0,0 +1,31 @@
+/*
+ * Copyright (C) 2013 Manuel Peinado
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.manuelpeinado.refreshactionitem;
+
+/**
+ * Strategies available to render the determinate progress indicator.
+ * <p>
+ * {@link #BITMAP} rasterizes the indicator into an offscreen bitmap every time
+ * the progress changes. {@link #DIRECT} draws the arcs straight into the view's
+ * canvas, so progress updates don't allocate anything. It doesn't need any offscreen
+ * buffer, so it also benefits from hardware acceleration. {@link #ATLAS} draws frames
+ * pre-rendered into a cache shared by all the indicators of the process, so several
+ * action items (or several refreshes of the same item) don't rasterize the same arcs
+ * over and over.
+ */
+public enum ProgressIndicatorRenderMode {
+    BITMAP, DIRECT, ATLAS
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2013 Manuel Peinado
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.manuelpeinado.refreshactionitem;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An input stream that reports the number of bytes read through it to a
+ * {@link ProgressReporter}.
+ * <p>
+ * The reporter is only called once enough bytes have been read to make a visible
+ * difference, so reading through this stream costs nothing noticeable. Like most streams
+ * it is meant to be read from a single thread.
+ */
+public class ProgressInputStream extends FilterInputStream {
+    private final ByteCounter mCounter;
+    private long mMarkCount;
+
+    /**
+     * Creates a stream whose length is not known yet. The action item shows an
+     * indeterminate progress indicator until {@link #setLength(long)} is called
+     */
+    public ProgressInputStream(InputStream in, ProgressReporter reporter) {
+        this(in, reporter, ProgressReporter.UNKNOWN);
+    }
+
+    /**
+     * @param length
+     *            The number of bytes the stream is expected to contain (for example, the
+     *            content length of an HTTP response), or {@link ProgressReporter#UNKNOWN}
+     */
+    public ProgressInputStream(InputStream in, ProgressReporter reporter, long length) {
+        super(in);
+        mCounter = new ByteCounter(reporter, length);
+    }
+
+    /**
+     * Set the number of bytes the stream is expected to contain, once it is known
+     */
+    public void setLength(long length) {
+        mCounter.setLength(length);
+    }
+
+    /**
+     * Returns the number of bytes read (or skipped) so far
+     */
+    public long getCount() {
+        return mCounter.getCount();
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b != -1) {
+            mCounter.add(1);
+        } else {
+            mCounter.report();
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int count) throws IOException {
+        int n = super.read(buffer, offset, count);
+        if (n > 0) {
+            mCounter.add(n);
+        } else if (n == -1) {
+            mCounter.report();
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(long byteCount) throws IOException {
+        long n = super.skip(byteCount);
+        if (n > 0) {
+            mCounter.add(n);
+        }
+        return n;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+        super.mark(readlimit);
+        mMarkCount = mCounter.getCount();
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        super.reset();
+        mCounter.reset(mMarkCount);
+    }
+}
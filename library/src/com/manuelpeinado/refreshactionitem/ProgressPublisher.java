@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2013 Manuel Peinado
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.manuelpeinado.refreshactionitem;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The lock-free progress channel shared by {@link RefreshActionItem} and
+ * {@link FlatRefreshActionItem}. Background threads publish values into atomic slots and
+ * the UI thread applies the latest ones to the action item once per frame.
+ * <p>
+ * It also holds the rule that decides whether a progress change is worth rendering.
+ */
+final class ProgressPublisher {
+    /**
+     * Changes in progress which move the end of the arc less than this are not
+     * rendered by default, as they would not be noticeable. Unit: pixels
+     */
+    static final float DEFAULT_REDRAW_THRESHOLD = 0.5f;
+    // Sentinel for the published slots, means "nothing new since the last frame"
+    private static final int NOT_PUBLISHED = Integer.MIN_VALUE;
+    private final AtomicInteger mPublishedProgress = new AtomicInteger(NOT_PUBLISHED);
+    private final AtomicInteger mPublishedMax = new AtomicInteger(NOT_PUBLISHED);
+    private final AtomicInteger mPublishedIncrement = new AtomicInteger();
+    private final Target mTarget;
+    private final FrameCoalescer mCoalescer = new FrameCoalescer(new Runnable() {
+        @Override
+        public void run() {
+            apply();
+        }
+    });
+
+    /**
+     * What the published values are applied to, on the UI thread
+     */
+    interface Target {
+        void setMax(int max);
+
+        void setProgress(int progress);
+
+        void incrementProgressBy(int diff);
+    }
+
+    ProgressPublisher(Target target) {
+        mTarget = target;
+    }
+
+    void publishProgress(int progress) {
+        // An absolute value supersedes the increments published before it
+        mPublishedIncrement.set(0);
+        mPublishedProgress.set(progress);
+        mCoalescer.schedule();
+    }
+
+    void publishIncrement(int diff) {
+        mPublishedIncrement.addAndGet(diff);
+        mCoalescer.schedule();
+    }
+
+    void publishMax(int max) {
+        mPublishedMax.set(max);
+        mCoalescer.schedule();
+    }
+
+    /**
+     * Applies whatever has been published since the last frame. Must be called from the UI
+     * thread
+     */
+    void apply() {
+        int max = mPublishedMax.getAndSet(NOT_PUBLISHED);
+        if (max != NOT_PUBLISHED) {
+            mTarget.setMax(max);
+        }
+        int progress = mPublishedProgress.getAndSet(NOT_PUBLISHED);
+        int increment = mPublishedIncrement.getAndSet(0);
+        if (progress != NOT_PUBLISHED) {
+            mTarget.setProgress(progress + increment);
+        } else if (increment != 0) {
+            mTarget.incrementProgressBy(increment);
+        }
+    }
+
+    /**
+     * Drops the published progress, which belongs to an operation that is over. Must be
+     * called from the UI thread
+     */
+    void discard() {
+        mCoalescer.cancel();
+        mPublishedProgress.set(NOT_PUBLISHED);
+        mPublishedIncrement.set(0);
+        int max = mPublishedMax.getAndSet(NOT_PUBLISHED);
+        if (max != NOT_PUBLISHED) {
+            // Unlike progress, the range is still meaningful for the next operation
+            mTarget.setMax(max);
+        }
+    }
+
+    /**
+     * Returns how far, in pixels, the end of the arc moves along the outer edge of an
+     * indicator with the given radius when the value changes by the given amount. If the
+     * radius is not known yet there is no way to tell, so infinity is returned
+     */
+    static float getArcLength(float valueDelta, float radius) {
+        if (radius <= 0) {
+            return Float.POSITIVE_INFINITY;
+        }
+        float sweepDelta = Math.abs(valueDelta) * 360;
+        return (float) Math.toRadians(sweepDelta) * radius;
+    }
+
+    /**
+     * Returns whether moving the indicator to the given value is worth rendering
+     * 
+     * @param arcDistance How far the end of the arc would move, in pixels
+     * @param threshold Minimum distance worth rendering, in pixels
+     */
+    static boolean isNoticeable(float value, float arcDistance, float threshold) {
+        // The start and end of the operation are always rendered, no matter how close they are
+        return value == 0 || value == 1 || arcDistance >= threshold;
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2013 Manuel Peinado
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.manuelpeinado.refreshactionitem;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * A channel that reports the number of bytes read through it to a
+ * {@link ProgressReporter}. See {@link ProgressInputStream}, which works the same way.
+ */
+public class ProgressReadableByteChannel implements ReadableByteChannel {
+    private final ReadableByteChannel mChannel;
+    private final ByteCounter mCounter;
+
+    /**
+     * Creates a channel whose length is not known yet. The action item shows an
+     * indeterminate progress indicator until {@link #setLength(long)} is called
+     */
+    public ProgressReadableByteChannel(ReadableByteChannel channel, ProgressReporter reporter) {
+        this(channel, reporter, ProgressReporter.UNKNOWN);
+    }
+
+    /**
+     * @param length
+     *            The number of bytes the channel is expected to provide, or
+     *            {@link ProgressReporter#UNKNOWN}
+     */
+    public ProgressReadableByteChannel(ReadableByteChannel channel, ProgressReporter reporter, long length) {
+        mChannel = channel;
+        mCounter = new ByteCounter(reporter, length);
+    }
+
+    /**
+     * Set the number of bytes the channel is expected to provide, once it is known
+     */
+    public void setLength(long length) {
+        mCounter.setLength(length);
+    }
+
+    /**
+     * Returns the number of bytes read so far
+     */
+    public long getCount() {
+        return mCounter.getCount();
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        int n = mChannel.read(dst);
+        if (n > 0) {
+            mCounter.add(n);
+        } else if (n == -1) {
+            mCounter.report();
+        }
+        return n;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return mChannel.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        mChannel.close();
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2013 Manuel Peinado
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.manuelpeinado.refreshactionitem;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reports the progress of a background operation to a {@link RefreshActionItem}. It can be
+ * called as often as needed, and from any thread.
+ * <p>
+ * Progress is measured with longs, so it can be expressed in bytes even for very big
+ * transfers. It is scaled down to the (much coarser) resolution of the progress
+ * indicator, and the action item is only notified when the scaled value changes.
+ * <p>
+ * If the size of the operation is not known in advance, use {@link #UNKNOWN} as its max.
+ * The action item shows an indeterminate progress indicator until a real max is set.
+ * <p>
+ * The reporters handed out by {@link RefreshTask} go quiet as soon as their task is
+ * cancelled or another task takes over the action item, so a worker that hasn't noticed
+ * yet can't mix its values into the next refresh.
+ */
+public class ProgressReporter {
+    /**
+     * Max of an operation whose size is not known (yet)
+     */
+    public static final long UNKNOWN = -1;
+    /**
+     * The scaled range never exceeds this, which is way more precise than what a progress
+     * indicator can show
+     */
+    private static final long MAX_RESOLUTION = 1 << 14;
+    private final RefreshActionItem mItem;
+    // Null if the reporter always owns the action item
+    private final CancellationToken mToken;
+    private final AtomicLong mProgress = new AtomicLong();
+    private volatile long mMax;
+    // Scaled value = real value >> mShift
+    private volatile int mShift;
+    private final AtomicInteger mLastReported = new AtomicInteger(-1);
+    private volatile boolean mUnknownMax;
+    // Only accessed from the UI thread
+    private boolean mSwitchedToIndeterminate;
+    private ProgressIndicatorType mDeterminateType;
+    private final FrameCoalescer mTypeUpdater = new FrameCoalescer(new Runnable() {
+        @Override
+        public void run() {
+            applyIndicatorType();
+        }
+    });
+
+    public ProgressReporter(RefreshActionItem item) {
+        this(item, null);
+    }
+
+    /**
+     * Creates a reporter that only reports while the given token is not cancelled and is
+     * the one held by the action item
+     */
+    ProgressReporter(RefreshActionItem item, CancellationToken token) {
+        mItem = item;
+        mToken = token;
+        setMax(item.getMax());
+    }
+
+    private boolean ownsItem() {
+        return mToken == null || (!mToken.isCancelled() && mItem.getCancellationToken() == mToken);
+    }
+
+    /**
+     * Set the value that corresponds to a complete operation, or {@link #UNKNOWN}
+     */
+    public void setMax(long max) {
+        if (max < 0) {
+            mMax = UNKNOWN;
+            if (!mUnknownMax) {
+                mUnknownMax = true;
+                mTypeUpdater.schedule();
+            }
+            return;
+        }
+        if (mUnknownMax) {
+            mUnknownMax = false;
+            mTypeUpdater.schedule();
+        }
+        int shift = 0;
+        while ((max >> shift) > MAX_RESOLUTION) {
+            ++shift;
+        }
+        mMax = max;
+        mShift = shift;
+        // Whatever was reported before is in the old scale
+        mLastReported.set(-1);
+        if (!ownsItem()) {
+            return;
+        }
+        mItem.setProgressUnitShift(shift);
+        mItem.publishMax((int) (max >> shift));
+        report(mProgress.get());
+    }
+
+    public long getMax() {
+        return mMax;
+    }
+
+    public void setProgress(long progress) {
+        mProgress.set(progress);
+        report(progress);
+    }
+
+    /**
+     * Atomically adds the given amount to the progress, so several threads can contribute
+     * to the same operation
+     */
+    public void incrementProgressBy(long diff) {
+        report(mProgress.addAndGet(diff));
+    }
+
+    public long getProgress() {
+        return mProgress.get();
+    }
+
+    /**
+     * Returns how many bits the real values are shifted right to get the values that the
+     * action item receives
+     */
+    public int getScaleShift() {
+        return mShift;
+    }
+
+    private void applyIndicatorType() {
+        if (mUnknownMax) {
+            if (!ownsItem()) {
+                return;
+            }
+            ProgressIndicatorType type = mItem.getProgressIndicatorType();
+            if (!mSwitchedToIndeterminate && type != ProgressIndicatorType.INDETERMINATE) {
+                mDeterminateType = type;
+                mSwitchedToIndeterminate = true;
+                mItem.setProgressIndicatorType(ProgressIndicatorType.INDETERMINATE);
+            }
+        } else if (mSwitchedToIndeterminate) {
+            mSwitchedToIndeterminate = false;
+            mItem.setProgressIndicatorType(mDeterminateType);
+        }
+    }
+
+    /**
+     * Gives the action item back the indicator type it had before the max was unknown.
+     * Must be called from the UI thread once the operation ends, unless another operation
+     * has taken over the action item in the meantime
+     */
+    void restoreIndicatorType() {
+        mTypeUpdater.cancel();
+        mUnknownMax = false;
+        applyIndicatorType();
+    }
+
+    private void report(long progress) {
+        if (mUnknownMax || !ownsItem()) {
+            return;
+        }
+        int scaled = (int) (Math.max(0, Math.min(progress, mMax)) >> mShift);
+        if (mLastReported.getAndSet(scaled) != scaled) {
+            mItem.publishProgress(scaled);
+        }
+    }
+}
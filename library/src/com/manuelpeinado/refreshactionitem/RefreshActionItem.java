@@ -15,21 +15,29 @@
  */
 package com.manuelpeinado.refreshactionitem;
 
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
 import android.content.Context;
-import android.content.res.TypedArray;
-import android.graphics.Rect;
+import android.content.res.Resources;
+import android.graphics.Canvas;
+import android.graphics.Color;
 import android.graphics.drawable.Drawable;
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.os.SystemClock;
 import android.text.TextUtils;
+import android.text.format.DateUtils;
 import android.util.AttributeSet;
-import android.view.Gravity;
+import android.util.SparseArray;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.View.OnClickListener;
 import android.view.View.OnLongClickListener;
+import android.view.ViewStub;
 import android.widget.FrameLayout;
 import android.widget.ImageView;
 import android.widget.ProgressBar;
-import android.widget.Toast;
 
 import com.actionbarsherlock.view.MenuItem;
 import com.readystatesoftware.viewbadger.BadgeView;
@@ -51,29 +59,152 @@ import com.readystatesoftware.viewbadger.BadgeView;
  * <p>
  * The action item also supports adding a small badge that indicates that there
  * is new data available.
+ * <p>
+ * Background threads which report progress very often should use
+ * {@link #publishProgress(int)} instead of {@link #setProgress(int)}. Published values
+ * are picked up by the UI thread once per frame, so the cost of displaying them does
+ * not depend on how often they are published.
  */
 public class RefreshActionItem extends FrameLayout implements OnClickListener, OnLongClickListener {
     private ImageView mRefreshButton;
+    // The progress indicators are created lazily, so they are null until first needed
     private ProgressBar mProgressIndicatorIndeterminate;
-    private ProgressIndicator mProgressIndicator;
+    // Created lazily on the UI thread but read by setProgress() from any thread. Volatile, so
+    // that it is only seen once fully configured
+    private volatile ProgressIndicator mProgressIndicator;
+    private int mProgressIndicatorForegroundColor = Color.WHITE;
+    private int mProgressIndicatorBackgroundColor = Color.BLACK;
+    private ProgressIndicatorRenderMode mProgressIndicatorRenderMode = ProgressIndicatorRenderMode.BITMAP;
+    private boolean mSmoothProgress;
+    private boolean mShowProgressPercentage;
     private RefreshActionListener mRefreshButtonListener;
+    // Only one of these is used, depending on whether the badge is drawn as an overlay
     private BadgeView mBadge;
+    private BadgeRenderer mOverlayBadge;
+    private boolean mBadgeOverlay;
     private int mBadgeBackgroundColor = -1;
     private int mBadgeTextStyle;
     private int mBadgePosition;
     // Please note that the state can be "showing progress" and "showing badge" simultaneously, in that case
     // the badge remains hidden until we stop showing progress
     private boolean mShowingBadge;
+    // Text updates for a badge which is already visible are applied at most once per frame
+    private final AtomicReference<String> mPendingBadgeText = new AtomicReference<String>();
+    private final AtomicInteger mBadgeCount = new AtomicInteger();
+    private volatile int mMaxBadgeCount = DEFAULT_MAX_BADGE_COUNT;
+    // Whether the badge is driven by the counter, rather than by showBadge() and hideBadge()
+    private volatile boolean mBadgeCountActive;
+    // Only accessed from the UI thread
+    private String mBadgeOverflowText;
+    private int mBadgeOverflowTextMax;
+    /**
+     * Badge counts bigger than this are shown as this value followed by a "+" sign
+     */
+    private static final int DEFAULT_MAX_BADGE_COUNT = 99;
+    private final FrameCoalescer mBadgeCountUpdater = new FrameCoalescer(new Runnable() {
+        @Override
+        public void run() {
+            applyBadgeCount();
+        }
+    });
+    private final FrameCoalescer mBadgeUpdater = new FrameCoalescer(new Runnable() {
+        @Override
+        public void run() {
+            applyPendingBadgeText();
+        }
+    });
     private MenuItem mMenuItem;
+    // Click gating, see setSingleFlight(), setClickDebounceInterval() and setMinRefreshInterval()
+    private boolean mSingleFlight = true;
+    private long mClickDebounceInterval;
+    private long mMinRefreshInterval;
+    // Time of the last accepted click or of the end of the last refresh, 0 if none yet
+    private long mLastRefreshTime;
+    private boolean mCancelOnTap;
+    private RefreshCancelListener mRefreshCancelListener;
+    // Volatile because the reporters of background tasks check whether they still own the item
+    private volatile CancellationToken mCancellationToken;
+    private final OnClickListener mCancelClickListener = new OnClickListener() {
+        @Override
+        public void onClick(View v) {
+            cancelRefresh();
+        }
+    };
+    private final Runnable mDebouncedClick = new Runnable() {
+        @Override
+        public void run() {
+            dispatchRefreshButtonClick();
+        }
+    };
     private boolean mShowingProgress;
     private int mMax = 100;
     private int mProgress = 0;
     private ProgressIndicatorType mProgressIndicatorType;
+    private boolean mBuiltInIndeterminateIndicator;
+    private float mProgressRedrawThreshold = ProgressPublisher.DEFAULT_REDRAW_THRESHOLD;
+    private final ProgressPublisher mPublisher = new ProgressPublisher(new ProgressPublisher.Target() {
+        @Override
+        public void setMax(int max) {
+            RefreshActionItem.this.setMax(max);
+        }
+
+        @Override
+        public void setProgress(int progress) {
+            RefreshActionItem.this.setProgress(progress);
+        }
+
+        @Override
+        public void incrementProgressBy(int diff) {
+            RefreshActionItem.this.incrementProgressBy(diff);
+        }
+    });
+    // Guarded by this, just like the progress
+    private final ThroughputEstimator mThroughputEstimator = new ThroughputEstimator();
+    // Set by ProgressReporter, which scales its values down before passing them to us
+    private volatile int mProgressUnitShift;
+    private ProgressRateListener mProgressRateListener;
+    private boolean mShowProgressRateOnLongClick;
+    private String mProgressRateUnit = "";
+    private final RenderingCounters mRenderingCounters = new RenderingCounters();
+    private RenderingMetricsListener mRenderingMetricsListener;
+    private final FrameCoalescer mProgressRateNotifier = new FrameCoalescer(new Runnable() {
+        @Override
+        public void run() {
+            notifyProgressRate();
+        }
+    });
 
     public interface RefreshActionListener {
         void onRefreshButtonClick(RefreshActionItem sender);
     }
 
+    public interface RefreshCancelListener {
+        void onRefreshCancel(RefreshActionItem sender);
+    }
+
+    public interface ProgressRateListener {
+        /**
+         * Called on the UI thread every time the estimate changes
+         * 
+         * @param rate
+         *            Progress units per second, see {@link RefreshActionItem#getProgressRate()}
+         * @param remainingTime
+         *            Milliseconds, see {@link RefreshActionItem#getRemainingTime()}
+         */
+        void onProgressRateChanged(RefreshActionItem sender, float rate, long remainingTime);
+    }
+
+    public interface RenderingMetricsListener {
+        /**
+         * Called every time the action item stops showing progress
+         * 
+         * @param metrics
+         *            The work done since the action item was created or its metrics were
+         *            last reset
+         */
+        void onRenderingMetrics(RefreshActionItem sender, RenderingMetrics metrics);
+    }
+
     public RefreshActionItem(Context context) {
         this(context, null);
     }
@@ -89,55 +220,38 @@ public class RefreshActionItem extends FrameLayout implements OnClickListener, O
         mRefreshButton = (ImageView) findViewById(R.id.refresh_button);
         mRefreshButton.setOnClickListener(this);
         mRefreshButton.setOnLongClickListener(this);
-        mProgressIndicatorIndeterminate = (ProgressBar) findViewById(R.id.indeterminate_progress_indicator);
-        mProgressIndicator = (ProgressIndicator) findViewById(R.id.determinate_progress_indicator);
         updateChildrenVisibility();
 
-        TypedArray a = context.obtainStyledAttributes(attrs, R.styleable.RefreshActionItem, defStyle, R.style.Widget_RefreshActionItem_Dark);
-        int N = a.getIndexCount();
-        for (int i = 0; i < N; ++i) {
-            int attr = a.getIndex(i);
-            switch (attr) {
-            case R.styleable.RefreshActionItem_progressIndicatorType:
-                mProgressIndicatorType = ProgressIndicatorType.values()[a.getInt(attr, 0)];
-                if (mProgressIndicatorType == ProgressIndicatorType.PIE) {
-                    mProgressIndicator.setPieStyle(true);
-                }
-                break;
-            case R.styleable.RefreshActionItem_refreshActionItemIcon:
-                Drawable refreshButtonIcon = a.getDrawable(attr);
-                mRefreshButton.setImageDrawable(refreshButtonIcon);
-                break;
-            case R.styleable.RefreshActionItem_progressIndicatorForegroundColor:
-                int color = a.getColor(attr, 0);
-                mProgressIndicator.setForegroundColor(color);
-                break;
-            case R.styleable.RefreshActionItem_progressIndicatorBackgroundColor:
-                color = a.getColor(attr, 0);
-                mProgressIndicator.setBackgroundColor(color);
-                break;
-            case R.styleable.RefreshActionItem_refreshActionItemBackground:
-                Drawable drawable = a.getDrawable(attr);
-                mRefreshButton.setBackgroundDrawable(drawable);
-                break;
-            case R.styleable.RefreshActionItem_badgeBackgroundColor:
-                mBadgeBackgroundColor = a.getColor(attr, -1);
-                break;
-            case R.styleable.RefreshActionItem_badgeTextStyle:
-                mBadgeTextStyle = a.getResourceId(attr, 0);
-                break;
-            case R.styleable.RefreshActionItem_badgePosition:
-                mBadgePosition = a.getInt(attr, 0);
-                break;
-            }
+        ResolvedStyle style = ResolvedStyle.obtain(context, attrs, defStyle);
+        mProgressIndicatorType = style.progressIndicatorType;
+        mBuiltInIndeterminateIndicator = style.builtInIndeterminateIndicator;
+        mProgressIndicatorRenderMode = style.renderMode;
+        Drawable refreshButtonIcon = style.newIcon(getResources());
+        if (refreshButtonIcon != null) {
+            mRefreshButton.setImageDrawable(refreshButtonIcon);
+        }
+        Drawable background = style.newBackground(getResources());
+        if (background != null) {
+            mRefreshButton.setBackgroundDrawable(background);
         }
-        a.recycle();
+        mProgressIndicatorForegroundColor = style.progressIndicatorForegroundColor;
+        mProgressIndicatorBackgroundColor = style.progressIndicatorBackgroundColor;
+        mBadgeBackgroundColor = style.badgeBackgroundColor;
+        mBadgeTextStyle = style.badgeTextStyle;
+        mBadgePosition = style.badgePosition;
+        mBadgeOverlay = style.badgeOverlay;
     }
 
     public void setRefreshActionListener(RefreshActionListener listener) {
         this.mRefreshButtonListener = listener;
     }
 
+    /**
+     * Associates the action item with its menu item. Like any other view, the action item
+     * only saves its state if it has an id, so give it one with {@link #setId(int)}. Don't
+     * reuse the id of the menu item: the refresh button inside the action item may already
+     * have it
+     */
     public void setMenuItem(MenuItem menuItem) {
         this.mMenuItem = menuItem;
         if (menuItem.getIcon() != null) {
@@ -145,6 +259,31 @@ public class RefreshActionItem extends FrameLayout implements OnClickListener, O
         }
     }
 
+    /**
+     * Returns an action item for the given menu item, reusing the one returned by the
+     * previous call if possible. Call it from <tt>onCreateOptionsMenu</tt> instead of
+     * <tt>getActionView()</tt> so that rebuilding the menu keeps the same action item, with
+     * its progress, badge and listener intact.
+     * <p>
+     * Declare the menu item without <tt>android:actionViewClass</tt>. Otherwise the menu
+     * inflater creates a new action item every time the menu is rebuilt, only for this
+     * method to throw it away
+     * 
+     * @param context
+     *            The context of the activity which owns the menu
+     * @param previous
+     *            The action item returned by the previous call, or null
+     */
+    public static RefreshActionItem recycle(Context context, MenuItem menuItem, RefreshActionItem previous) {
+        RefreshActionItem item = ActionViewRecycler.findReusable(context, menuItem, previous, RefreshActionItem.class);
+        if (item == null) {
+            item = new RefreshActionItem(context);
+        }
+        ActionViewRecycler.attach(menuItem, item);
+        item.setMenuItem(menuItem);
+        return item;
+    }
+
     /**
      * Adds an exclamation icon to the refresh button. This is intended to
      * suggest the user that new data is available.
@@ -168,27 +307,90 @@ public class RefreshActionItem extends FrameLayout implements OnClickListener, O
      * <p>
      * If the display mode is not <tt>BUTTON</tt>, nothing is done.
      * 
+     * If the badge is already visible its text is just replaced, without animating it
+     * again. Several updates within the same frame result in a single redraw, so this can
+     * be called as often as needed (for example, to show a count of unread items)
+     * 
      * @param text
      *            Text that is drawn inside the badge icon
      * @see #showBadge()
      */
     public void showBadge(String text) {
-        hideBadge();
-        if (mBadge == null) {
-            mBadge = new BadgeView(getContext(), mRefreshButton);
-            mBadge.setBadgePosition(mBadgePosition);
-            if (mBadgeTextStyle != 0) {
-                mBadge.setTextAppearance(getContext(), mBadgeTextStyle);
+        stopBadgeCount();
+        showBadgeText(text);
+    }
+
+    private void stopBadgeCount() {
+        mBadgeCountActive = false;
+        mBadgeCountUpdater.cancel();
+    }
+
+    private void showBadgeText(String text) {
+        if (mShowingBadge) {
+            mPendingBadgeText.set(text);
+            mBadgeUpdater.schedule();
+            return;
+        }
+        if (mBadgeOverlay) {
+            if (mOverlayBadge == null) {
+                mOverlayBadge = new BadgeRenderer(getContext());
+                mOverlayBadge.setPosition(mBadgePosition);
+                if (mBadgeTextStyle != 0) {
+                    mOverlayBadge.setTextAppearance(getContext(), mBadgeTextStyle);
+                }
+                if (mBadgeBackgroundColor != -1) {
+                    mOverlayBadge.setBackgroundColor(mBadgeBackgroundColor);
+                }
             }
-            if (mBadgeBackgroundColor != -1) {
-                mBadge.setBadgeBackgroundColor(mBadgeBackgroundColor);
+            mOverlayBadge.setText(text);
+        } else {
+            if (mBadge == null) {
+                mBadge = new BadgeView(getContext(), mRefreshButton);
+                mBadge.setBadgePosition(mBadgePosition);
+                if (mBadgeTextStyle != 0) {
+                    mBadge.setTextAppearance(getContext(), mBadgeTextStyle);
+                }
+                if (mBadgeBackgroundColor != -1) {
+                    mBadge.setBadgeBackgroundColor(mBadgeBackgroundColor);
+                }
             }
+            mBadge.setText(text);
         }
         mShowingBadge = true;
-        mBadge.setText(text);
         if (!mShowingProgress) {
             // Otherwise the badge will be shown as soon as we stop showing progress
-            mBadge.show(true);
+            setBadgeShown(true, true);
+        }
+    }
+
+    private void applyPendingBadgeText() {
+        String text = mPendingBadgeText.getAndSet(null);
+        if (text == null || !mShowingBadge) {
+            return;
+        }
+        if (mBadgeOverlay) {
+            mOverlayBadge.setText(text);
+            invalidate();
+        } else if (!text.contentEquals(mBadge.getText())) {
+            mBadge.setText(text);
+        }
+    }
+
+    private void setBadgeShown(boolean shown, boolean animate) {
+        if (animate) {
+            mRenderingCounters.badgeAnimations.incrementAndGet();
+        }
+        if (mBadgeOverlay) {
+            if (shown) {
+                mOverlayBadge.show(animate);
+            } else {
+                mOverlayBadge.hide(animate);
+            }
+            invalidate();
+        } else if (shown) {
+            mBadge.show(animate);
+        } else {
+            mBadge.hide(animate);
         }
     }
 
@@ -203,13 +405,20 @@ public class RefreshActionItem extends FrameLayout implements OnClickListener, O
      * @see #isBadgeVisible()
      */
     public void hideBadge() {
-        if (mBadge == null || !mShowingBadge) {
+        stopBadgeCount();
+        removeBadge();
+    }
+
+    private void removeBadge() {
+        if (!mShowingBadge) {
             return;
         }
+        mBadgeUpdater.cancel();
+        mPendingBadgeText.set(null);
         mShowingBadge = false;
         if (!mShowingProgress) {
             // If showing progress the badge is already hidden
-            mBadge.hide(true);
+            setBadgeShown(false, true);
         }
     }
 
@@ -220,29 +429,184 @@ public class RefreshActionItem extends FrameLayout implements OnClickListener, O
      * @see #hideBadge()
      */
     public boolean isBadgeVisible() {
-        return mBadge != null && mShowingBadge;
+        return mShowingBadge;
+    }
+
+    /**
+     * Shows a badge with the given count, or hides the badge if the count is zero or
+     * negative. Counts bigger than {@link #getMaxBadgeCount()} are shown as that value
+     * followed by a "+" sign.
+     * <p>
+     * Unlike the rest of the badge methods, this can be called from any thread. The
+     * badge is updated at most once per frame. The counter drives the badge until
+     * {@link #showBadge(String)} or {@link #hideBadge()} are called
+     * 
+     * @see #incrementBadgeCount(int)
+     * @see #setMaxBadgeCount(int)
+     */
+    public void setBadgeCount(int count) {
+        mBadgeCount.set(count);
+        mBadgeCountActive = true;
+        mBadgeCountUpdater.schedule();
+    }
+
+    /**
+     * Atomically adds the given amount to the badge count. This can be called from any
+     * thread, and increments from several threads are never lost
+     * 
+     * @return the new badge count
+     * @see #setBadgeCount(int)
+     */
+    public int incrementBadgeCount(int diff) {
+        int count = mBadgeCount.addAndGet(diff);
+        mBadgeCountActive = true;
+        mBadgeCountUpdater.schedule();
+        return count;
+    }
+
+    /**
+     * Returns the count set with {@link #setBadgeCount(int)} or {@link #incrementBadgeCount(int)}
+     */
+    public int getBadgeCount() {
+        return mBadgeCount.get();
+    }
+
+    /**
+     * Set the biggest badge count that is displayed as is. Bigger counts are shown as this
+     * value followed by a "+" sign. The default value is 99
+     */
+    public void setMaxBadgeCount(int maxCount) {
+        mMaxBadgeCount = maxCount;
+        if (mBadgeCountActive) {
+            mBadgeCountUpdater.schedule();
+        }
+    }
+
+    public int getMaxBadgeCount() {
+        return mMaxBadgeCount;
+    }
+
+    private String getBadgeOverflowText() {
+        int maxCount = mMaxBadgeCount;
+        if (mBadgeOverflowText == null || maxCount != mBadgeOverflowTextMax) {
+            mBadgeOverflowText = maxCount + "+";
+            mBadgeOverflowTextMax = maxCount;
+        }
+        return mBadgeOverflowText;
+    }
+
+    private void applyBadgeCount() {
+        if (!mBadgeCountActive) {
+            // The app has taken over the badge since this was scheduled
+            return;
+        }
+        int count = mBadgeCount.get();
+        if (count <= 0) {
+            removeBadge();
+            return;
+        }
+        String text = count > mMaxBadgeCount ? getBadgeOverflowText() : TextMeasureCache.getNumberText(count);
+        if (mShowingBadge) {
+            // We are already in the frame callback, no need to wait for another one
+            mPendingBadgeText.set(text);
+            applyPendingBadgeText();
+        } else {
+            showBadgeText(text);
+        }
+    }
+
+    /**
+     * Choose whether the badge is drawn by the action item itself, on top of the refresh
+     * button, instead of being a separate view. Showing, hiding or updating an overlay
+     * badge never changes the view hierarchy, so it doesn't cause the action bar to be
+     * laid out again. It looks and is styled just like the regular badge
+     */
+    public void setBadgeOverlay(boolean overlay) {
+        if (overlay == mBadgeOverlay) {
+            return;
+        }
+        String text = null;
+        if (mShowingBadge) {
+            applyPendingBadgeText();
+            text = overlay ? mBadge.getText().toString() : mOverlayBadge.getText();
+            if (!mShowingProgress) {
+                setBadgeShown(false, false);
+            }
+            mShowingBadge = false;
+        }
+        mBadgeOverlay = overlay;
+        if (text != null) {
+            showBadgeText(text);
+        }
+    }
+
+    public boolean isBadgeOverlay() {
+        return mBadgeOverlay;
+    }
+
+    @Override
+    protected void dispatchDraw(Canvas canvas) {
+        super.dispatchDraw(canvas);
+        if (mOverlayBadge != null && mOverlayBadge.draw(canvas, getWidth(), getHeight())) {
+            // The badge is fading in or out
+            invalidate();
+        }
     }
     
     private void updateChildrenVisibility() {
         if (!mShowingProgress) {
             mRefreshButton.setVisibility(View.VISIBLE);
-            mProgressIndicatorIndeterminate.setVisibility(View.GONE);
-            mProgressIndicator.setVisibility(View.GONE);
+            hide(mProgressIndicatorIndeterminate);
+            hide(mProgressIndicator);
             return;
         }
-        if (mProgressIndicatorType == ProgressIndicatorType.INDETERMINATE) {
+        if (mProgressIndicatorType == ProgressIndicatorType.INDETERMINATE && !mBuiltInIndeterminateIndicator) {
             mRefreshButton.setVisibility(View.GONE);
-            mProgressIndicatorIndeterminate.setVisibility(View.VISIBLE);
-            mProgressIndicator.setVisibility(View.GONE);
+            getIndeterminateProgressIndicator().setVisibility(View.VISIBLE);
+            hide(mProgressIndicator);
             updateProgressIndicatorValue();
             return;
         }
         mRefreshButton.setVisibility(View.GONE);
-        mProgressIndicatorIndeterminate.setVisibility(View.GONE);
-        mProgressIndicator.setVisibility(View.VISIBLE);
+        hide(mProgressIndicatorIndeterminate);
+        ProgressIndicator progressIndicator = getProgressIndicator();
+        progressIndicator.setIndeterminate(mProgressIndicatorType == ProgressIndicatorType.INDETERMINATE);
+        progressIndicator.setVisibility(View.VISIBLE);
         updateProgressIndicatorValue();
     }
 
+    private static void hide(View view) {
+        if (view != null) {
+            view.setVisibility(View.GONE);
+        }
+    }
+
+    private ProgressBar getIndeterminateProgressIndicator() {
+        if (mProgressIndicatorIndeterminate == null) {
+            ViewStub stub = (ViewStub) findViewById(R.id.indeterminate_progress_indicator_stub);
+            mProgressIndicatorIndeterminate = (ProgressBar) stub.inflate();
+            updateIndicatorListeners(mProgressIndicatorIndeterminate);
+        }
+        return mProgressIndicatorIndeterminate;
+    }
+
+    private ProgressIndicator getProgressIndicator() {
+        if (mProgressIndicator == null) {
+            ViewStub stub = (ViewStub) findViewById(R.id.determinate_progress_indicator_stub);
+            ProgressIndicator progressIndicator = (ProgressIndicator) stub.inflate();
+            progressIndicator.setPieStyle(mProgressIndicatorType == ProgressIndicatorType.PIE);
+            progressIndicator.setForegroundColor(mProgressIndicatorForegroundColor);
+            progressIndicator.setBackgroundColor(mProgressIndicatorBackgroundColor);
+            progressIndicator.setRenderMode(mProgressIndicatorRenderMode);
+            progressIndicator.setSmoothProgress(mSmoothProgress);
+            progressIndicator.setShowPercentage(mShowProgressPercentage);
+            progressIndicator.setRenderingCounters(mRenderingCounters);
+            updateIndicatorListeners(progressIndicator);
+            mProgressIndicator = progressIndicator;
+        }
+        return mProgressIndicator;
+    }
+
     /**
      * Return the upper limit of this progress bar's range.
      * 
@@ -265,15 +629,48 @@ public class RefreshActionItem extends FrameLayout implements OnClickListener, O
         if (isBadgeVisible()) {
             if (show) {
                 // Hide badge temporarily until we stop showing progress
-                mBadge.hide(false);
+                setBadgeShown(false, false);
             } else {
                 // If badge was hidden temporarily we restore it back to visible
-                mBadge.show(false);
+                setBadgeShown(true, false);
             }
         }
+        mPublisher.discard();
         setProgress(0);
+        synchronized (this) {
+            mThroughputEstimator.reset();
+        }
+        // Progress is in plain units unless the next source (a ProgressReporter) says otherwise
+        mProgressUnitShift = 0;
+        if (!show) {
+            // The minimum refresh interval counts from the end of the refresh
+            mLastRefreshTime = SystemClock.uptimeMillis();
+        }
         mShowingProgress = show;
         updateChildrenVisibility();
+        if (!show && mRenderingMetricsListener != null) {
+            mRenderingMetricsListener.onRenderingMetrics(this, getRenderingMetrics());
+        }
+    }
+
+    /**
+     * Returns how much rendering work the action item has done since it was created or
+     * {@link #resetRenderingMetrics()} was last called. Counting is always on and cheap
+     */
+    public RenderingMetrics getRenderingMetrics() {
+        return mRenderingCounters.snapshot();
+    }
+
+    public void resetRenderingMetrics() {
+        mRenderingCounters.reset();
+    }
+
+    /**
+     * Set a listener that receives the rendering metrics each time a refresh ends, for
+     * example to send them to your telemetry
+     */
+    public void setRenderingMetricsListener(RenderingMetricsListener listener) {
+        mRenderingMetricsListener = listener;
     }
 
     /**
@@ -288,6 +685,7 @@ public class RefreshActionItem extends FrameLayout implements OnClickListener, O
      * @see #incrementProgressBy(int)
      */
     public synchronized void setProgress(int progress) {
+        mRenderingCounters.progressUpdatesReceived.incrementAndGet();
         if (progress < 0) {
             progress = 0;
         }
@@ -297,11 +695,124 @@ public class RefreshActionItem extends FrameLayout implements OnClickListener, O
         if (progress != mProgress) {
             mProgress = progress;
             updateProgressIndicatorValue();
+            if (mThroughputEstimator.addSample(progress, SystemClock.uptimeMillis()) && mProgressRateListener != null) {
+                mProgressRateNotifier.schedule();
+            }
         }
     }
 
+    /**
+     * Returns how fast progress is being made, in progress units per second (bytes per
+     * second if the progress is reported in bytes through a {@link ProgressReporter}), or a
+     * negative value if it is not known yet. The estimate is a moving average, updated
+     * with each progress change
+     * 
+     * @see #getRemainingTime()
+     * @see #setProgressRateListener(ProgressRateListener)
+     */
+    public synchronized float getProgressRate() {
+        float rate = mThroughputEstimator.getRate();
+        return rate < 0 ? -1 : rate * (1L << mProgressUnitShift);
+    }
+
+    /**
+     * Returns the estimated time until progress reaches {@link #getMax()}, in milliseconds,
+     * or -1 if it is not known yet
+     * 
+     * @see #getProgressRate()
+     */
+    public synchronized long getRemainingTime() {
+        return mThroughputEstimator.getRemainingTime(mMax - mProgress);
+    }
+
+    public void setProgressRateListener(ProgressRateListener listener) {
+        mProgressRateListener = listener;
+    }
+
+    private void notifyProgressRate() {
+        if (mProgressRateListener != null) {
+            mProgressRateListener.onProgressRateChanged(this, getProgressRate(), getRemainingTime());
+        }
+    }
+
+    /**
+     * If enabled, long-pressing the progress indicator shows the progress rate and the
+     * estimated remaining time, below the title of the menu item
+     * 
+     * @see #setProgressRateUnit(String)
+     */
+    public void setShowProgressRateOnLongClick(boolean show) {
+        mShowProgressRateOnLongClick = show;
+        updateIndicatorListeners(mProgressIndicatorIndeterminate);
+        updateIndicatorListeners(mProgressIndicator);
+    }
+
+    public boolean isShowProgressRateOnLongClick() {
+        return mShowProgressRateOnLongClick;
+    }
+
+    /**
+     * Set the label shown after the progress rate on long-press, for example "B" or
+     * "items". Empty by default
+     */
+    public void setProgressRateUnit(String unit) {
+        mProgressRateUnit = unit != null ? unit : "";
+    }
+
+    void setProgressUnitShift(int shift) {
+        mProgressUnitShift = shift;
+    }
+
+    private String getProgressRateText() {
+        StringBuilder text = new StringBuilder();
+        if (mMenuItem != null && !TextUtils.isEmpty(mMenuItem.getTitle())) {
+            text.append(mMenuItem.getTitle()).append('\n');
+        }
+        Resources res = getResources();
+        float rate = getProgressRate();
+        String amount = rate < 0 ? res.getString(R.string.rai__progress_rate_unknown) : String.format("%.1f", rate);
+        String rateText;
+        if (mProgressRateUnit.length() > 0) {
+            rateText = res.getString(R.string.rai__progress_rate_with_unit, amount, mProgressRateUnit);
+        } else {
+            rateText = res.getString(R.string.rai__progress_rate, amount);
+        }
+        long remainingTime = getRemainingTime();
+        if (remainingTime >= 0) {
+            rateText = res.getString(R.string.rai__progress_rate_and_remaining_time, rateText, DateUtils.formatElapsedTime(remainingTime / 1000));
+        }
+        return text.append(rateText).toString();
+    }
+
     private void updateProgressIndicatorValue() {
-        mProgressIndicator.setValue(mProgress / (float) mMax);
+        ProgressIndicator progressIndicator = mProgressIndicator;
+        if (progressIndicator == null) {
+            // The value will be applied once the indicator is created
+            return;
+        }
+        float value = mProgress / (float) mMax;
+        if (!ProgressPublisher.isNoticeable(value, progressIndicator.getArcDistance(value), mProgressRedrawThreshold)) {
+            return;
+        }
+        progressIndicator.setValue(value);
+    }
+
+    /**
+     * Set the minimum change that a new progress value must cause in the determinate
+     * progress indicator to be rendered. The change is measured as the distance the end
+     * of the arc would travel along the edge of the indicator. Smaller changes are
+     * accumulated until they become noticeable. The default value is half a pixel;
+     * use 0 to render every change
+     * 
+     * @param pixels the threshold, in pixels
+     * @see #setProgress(int)
+     */
+    public synchronized void setProgressRedrawThreshold(float pixels) {
+        mProgressRedrawThreshold = pixels;
+    }
+
+    public synchronized float getProgressRedrawThreshold() {
+        return mProgressRedrawThreshold;
     }
 
     /**
@@ -315,6 +826,45 @@ public class RefreshActionItem extends FrameLayout implements OnClickListener, O
         setProgress(mProgress + diff);
     }
     
+    /**
+     * Thread-safe and lock-free alternative to {@link #setProgress(int)}, intended for
+     * background threads which report progress very often. The value is just stored, and
+     * the UI thread picks up the latest one once per frame; intermediate values are
+     * skipped.
+     * 
+     * @param progress
+     *            the new progress, between 0 and {@link #getMax()}
+     * @see #publishIncrement(int)
+     * @see #publishMax(int)
+     */
+    public void publishProgress(int progress) {
+        mPublisher.publishProgress(progress);
+    }
+
+    /**
+     * Thread-safe and lock-free alternative to {@link #incrementProgressBy(int)}.
+     * Increments published between two frames are added up and applied at once.
+     * 
+     * @param diff
+     *            the amount by which the progress must be increased
+     * @see #publishProgress(int)
+     */
+    public void publishIncrement(int diff) {
+        mPublisher.publishIncrement(diff);
+    }
+
+    /**
+     * Thread-safe and lock-free alternative to {@link #setMax(int)}. The new range is
+     * applied in the next frame, before any published progress.
+     * 
+     * @param max
+     *            the upper range of this progress bar
+     * @see #publishProgress(int)
+     */
+    public void publishMax(int max) {
+        mPublisher.publishMax(max);
+    }
+
     /**
      * Set the range of the progress bar to 0...<tt>max</tt>
      * 
@@ -346,11 +896,13 @@ public class RefreshActionItem extends FrameLayout implements OnClickListener, O
             return;
         }
         mProgressIndicatorType  = style;
-        if (style == ProgressIndicatorType.PIE) {
-            mProgressIndicator.setPieStyle(true);
-        }
-        else if (style == ProgressIndicatorType.WHEEL) {
-            mProgressIndicator.setPieStyle(false);
+        if (mProgressIndicator != null) {
+            if (style == ProgressIndicatorType.PIE) {
+                mProgressIndicator.setPieStyle(true);
+            }
+            else if (style == ProgressIndicatorType.WHEEL) {
+                mProgressIndicator.setPieStyle(false);
+            }
         }
         updateChildrenVisibility();
     }
@@ -359,34 +911,344 @@ public class RefreshActionItem extends FrameLayout implements OnClickListener, O
         return mProgressIndicatorType;
     }
 
+    /**
+     * Choose whether the indeterminate progress indicator is drawn by the library itself
+     * instead of by a platform <tt>ProgressBar</tt>. The built-in indicator spins an arc around
+     * the wheel (or pie) using the progress indicator colors. It is much cheaper to animate,
+     * specially on old devices, and it stops animating as soon as it is not visible
+     */
+    public void setBuiltInIndeterminateIndicator(boolean builtIn) {
+        if (builtIn == mBuiltInIndeterminateIndicator) {
+            return;
+        }
+        mBuiltInIndeterminateIndicator = builtIn;
+        updateChildrenVisibility();
+    }
+
+    public boolean isBuiltInIndeterminateIndicator() {
+        return mBuiltInIndeterminateIndicator;
+    }
+
+    /**
+     * Changes the way the determinate progress indicator is rendered. Use
+     * {@link ProgressIndicatorRenderMode#DIRECT} if progress is updated very often, so
+     * that updates don't allocate memory, or {@link ProgressIndicatorRenderMode#ATLAS} if
+     * your app shows several action items or refreshes often, so that they all reuse the
+     * same pre-rendered frames
+     * @param renderMode One of {@link ProgressIndicatorRenderMode#BITMAP},
+     *                   {@link ProgressIndicatorRenderMode#DIRECT} or
+     *                   {@link ProgressIndicatorRenderMode#ATLAS}
+     */
+    public void setProgressIndicatorRenderMode(ProgressIndicatorRenderMode renderMode) {
+        mProgressIndicatorRenderMode = renderMode;
+        if (mProgressIndicator != null) {
+            mProgressIndicator.setRenderMode(renderMode);
+        }
+    }
+
+    public ProgressIndicatorRenderMode getProgressIndicatorRenderMode() {
+        return mProgressIndicatorRenderMode;
+    }
+
+    /**
+     * Enables or disables smooth progress. When enabled, the determinate progress indicator
+     * eases towards each new progress value instead of jumping to it, which looks much better
+     * when progress is reported in bursts. This has no effect on the indeterminate
+     * progress indicator. In {@link ProgressIndicatorRenderMode#BITMAP} mode the eased
+     * frames are drawn without rasterizing, only the final value of each burst is
+     */
+    public void setSmoothProgress(boolean smoothProgress) {
+        mSmoothProgress = smoothProgress;
+        if (mProgressIndicator != null) {
+            mProgressIndicator.setSmoothProgress(smoothProgress);
+        }
+    }
+
+    public boolean isSmoothProgress() {
+        return mSmoothProgress;
+    }
+
+    /**
+     * Shows or hides a label with the progress percentage in the center of the determinate
+     * progress indicator. The label is only shown with the {@link ProgressIndicatorType#WHEEL}
+     * type
+     */
+    public void setShowProgressPercentage(boolean show) {
+        mShowProgressPercentage = show;
+        if (mProgressIndicator != null) {
+            mProgressIndicator.setShowPercentage(show);
+        }
+    }
+
+    public boolean isShowProgressPercentage() {
+        return mShowProgressPercentage;
+    }
+
+    /**
+     * Releases the frames cached by the action items which use the
+     * {@link ProgressIndicatorRenderMode#ATLAS} render mode. Call this from your
+     * <tt>onLowMemory()</tt> callback. Frames will be re-rendered when needed
+     */
+    public static void clearProgressIndicatorCache() {
+        ProgressFrameAtlas.evictAll();
+    }
+
+    /**
+     * If enabled, clicks are ignored while the action item shows progress, so that a
+     * refresh cannot be started while another one is in flight. Enabled by default
+     */
+    public void setSingleFlight(boolean singleFlight) {
+        mSingleFlight = singleFlight;
+    }
+
+    public boolean isSingleFlight() {
+        return mSingleFlight;
+    }
+
+    /**
+     * Collapses rapid taps into a single click. The click is only reported once the
+     * refresh button has not been tapped for the given time, so every tap restarts the
+     * wait. Use 0 (the default) to report clicks immediately
+     * 
+     * @param millis the debounce interval, in milliseconds
+     */
+    public void setClickDebounceInterval(long millis) {
+        mClickDebounceInterval = millis;
+    }
+
+    public long getClickDebounceInterval() {
+        return mClickDebounceInterval;
+    }
+
+    /**
+     * Clicks that arrive sooner than this after the previous refresh (counting from its
+     * end, or from its click if progress was never shown) are ignored. Use 0 (the
+     * default) to accept every click
+     * 
+     * @param millis the minimum interval between refreshes, in milliseconds
+     */
+    public void setMinRefreshInterval(long millis) {
+        mMinRefreshInterval = millis;
+    }
+
+    public long getMinRefreshInterval() {
+        return mMinRefreshInterval;
+    }
+
+    /**
+     * If enabled, tapping the progress indicator cancels the refresh: the action item
+     * switches back to the refresh button immediately, the cancellation token (if any) is
+     * cancelled and the cancel listener (if any) is notified. Disabled by default
+     * 
+     * @see #setRefreshCancelListener(RefreshCancelListener)
+     * @see #setCancellationToken(CancellationToken)
+     */
+    public void setCancelOnTap(boolean cancelOnTap) {
+        mCancelOnTap = cancelOnTap;
+        updateIndicatorListeners(mProgressIndicatorIndeterminate);
+        updateIndicatorListeners(mProgressIndicator);
+    }
+
+    public boolean isCancelOnTap() {
+        return mCancelOnTap;
+    }
+
+    private void updateIndicatorListeners(View progressIndicator) {
+        if (progressIndicator == null) {
+            return;
+        }
+        progressIndicator.setOnClickListener(mCancelOnTap ? mCancelClickListener : null);
+        progressIndicator.setClickable(mCancelOnTap);
+        progressIndicator.setOnLongClickListener(mShowProgressRateOnLongClick ? this : null);
+        progressIndicator.setLongClickable(mShowProgressRateOnLongClick);
+    }
+
+    public void setRefreshCancelListener(RefreshCancelListener listener) {
+        mRefreshCancelListener = listener;
+    }
+
+    /**
+     * Set the token that is cancelled when the user cancels the current refresh. The
+     * token is forgotten once cancelled, so each refresh needs its own one.
+     * {@link RefreshTask} takes care of this automatically
+     * 
+     * @see #setCancelOnTap(boolean)
+     */
+    public void setCancellationToken(CancellationToken token) {
+        mCancellationToken = token;
+    }
+
+    public CancellationToken getCancellationToken() {
+        return mCancellationToken;
+    }
+
+    /**
+     * Cancels the current refresh, just as if the user had tapped the progress indicator
+     * with {@link #setCancelOnTap(boolean)} enabled. If no progress is shown nothing is done
+     */
+    public void cancelRefresh() {
+        if (!mShowingProgress) {
+            return;
+        }
+        CancellationToken token = mCancellationToken;
+        mCancellationToken = null;
+        if (token != null) {
+            token.cancel();
+        }
+        showProgress(false);
+        if (mRefreshCancelListener != null) {
+            mRefreshCancelListener.onRefreshCancel(this);
+        }
+    }
+
     @Override
     public void onClick(View v) {
-        if (mRefreshButtonListener != null) {
-            mRefreshButtonListener.onRefreshButtonClick(this);
+        if (mClickDebounceInterval > 0) {
+            removeCallbacks(mDebouncedClick);
+            postDelayed(mDebouncedClick, mClickDebounceInterval);
+            return;
+        }
+        dispatchRefreshButtonClick();
+    }
+
+    private void dispatchRefreshButtonClick() {
+        if (mRefreshButtonListener == null) {
+            return;
+        }
+        if (mSingleFlight && mShowingProgress) {
+            return;
+        }
+        long now = SystemClock.uptimeMillis();
+        if (mLastRefreshTime != 0 && now - mLastRefreshTime < mMinRefreshInterval) {
+            return;
         }
+        mLastRefreshTime = now;
+        mRefreshButtonListener.onRefreshButtonClick(this);
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        removeCallbacks(mDebouncedClick);
     }
 
     @Override
     public boolean onLongClick(View v) {
+        if (mShowingProgress) {
+            // Only the progress indicators get here while showing progress
+            CheatSheet.show(this, getProgressRateText());
+            return true;
+        }
         if (mMenuItem == null || TextUtils.isEmpty(mMenuItem.getTitle())) {
             return true;
         }
-        final int[] screenPos = new int[2];
-        final Rect displayFrame = new Rect();
-        getLocationOnScreen(screenPos);
-        getWindowVisibleDisplayFrame(displayFrame);
-        final Context context = getContext();
-        final int width = getWidth();
-        final int height = getHeight();
-        final int midy = screenPos[1] + height / 2;
-        final int screenWidth = context.getResources().getDisplayMetrics().widthPixels;
-        Toast cheatSheet = Toast.makeText(context, mMenuItem.getTitle(), Toast.LENGTH_SHORT);
-        if (midy < displayFrame.height()) {
-            cheatSheet.setGravity(Gravity.TOP | Gravity.RIGHT, screenWidth - screenPos[0] - width / 2, height);
+        CheatSheet.show(this, mMenuItem.getTitle());
+        return true;
+    }
+
+    @Override
+    protected void dispatchSaveInstanceState(SparseArray<Parcelable> container) {
+        // The children have nothing worth saving, and the refresh button would overwrite our
+        // state if it had the same id as the menu item
+        dispatchFreezeSelfOnly(container);
+    }
+
+    @Override
+    protected void dispatchRestoreInstanceState(SparseArray<Parcelable> container) {
+        dispatchThawSelfOnly(container);
+    }
+
+    /**
+     * Saves the indicator type, the max and the badge. Whether a refresh is in progress is
+     * deliberately left out: the operation belongs to the old activity, and nothing would
+     * ever stop the progress indicator of the new one. Use a {@link RefreshSession} to
+     * keep an operation going across configuration changes
+     */
+    @Override
+    protected Parcelable onSaveInstanceState() {
+        // A max published by the background thread is still meaningful for the next refresh
+        mPublisher.apply();
+        SavedState ss = new SavedState(super.onSaveInstanceState());
+        synchronized (this) {
+            ss.max = mMax;
+        }
+        ss.progressIndicatorType = mProgressIndicatorType != null ? mProgressIndicatorType.ordinal() : -1;
+        if (mShowingBadge) {
+            String pendingText = mPendingBadgeText.get();
+            if (pendingText != null) {
+                ss.badgeText = pendingText;
+            } else if (mBadgeOverlay) {
+                ss.badgeText = mOverlayBadge.getText();
+            } else {
+                ss.badgeText = mBadge.getText().toString();
+            }
+        }
+        ss.badgeCount = mBadgeCount.get();
+        ss.badgeCountActive = mBadgeCountActive;
+        return ss;
+    }
+
+    @Override
+    protected void onRestoreInstanceState(Parcelable state) {
+        if (!(state instanceof SavedState)) {
+            super.onRestoreInstanceState(state);
+            return;
+        }
+        SavedState ss = (SavedState) state;
+        super.onRestoreInstanceState(ss.getSuperState());
+        if (ss.progressIndicatorType != -1) {
+            setProgressIndicatorType(ProgressIndicatorType.values()[ss.progressIndicatorType]);
+        }
+        setMax(ss.max);
+        mBadgeCount.set(ss.badgeCount);
+        mBadgeCountActive = ss.badgeCountActive;
+        if (ss.badgeText != null) {
+            showBadgeText(ss.badgeText);
         } else {
-            cheatSheet.setGravity(Gravity.BOTTOM | Gravity.CENTER_HORIZONTAL, 0, height);
+            removeBadge();
         }
-        cheatSheet.show();
-        return true;
+    }
+
+    static class SavedState extends BaseSavedState {
+        int max;
+        int progressIndicatorType;
+        String badgeText;
+        int badgeCount;
+        boolean badgeCountActive;
+
+        SavedState(Parcelable superState) {
+            super(superState);
+        }
+
+        private SavedState(Parcel in) {
+            super(in);
+            max = in.readInt();
+            progressIndicatorType = in.readInt();
+            badgeText = in.readString();
+            badgeCount = in.readInt();
+            badgeCountActive = in.readInt() != 0;
+        }
+
+        @Override
+        public void writeToParcel(Parcel out, int flags) {
+            super.writeToParcel(out, flags);
+            out.writeInt(max);
+            out.writeInt(progressIndicatorType);
+            out.writeString(badgeText);
+            out.writeInt(badgeCount);
+            out.writeInt(badgeCountActive ? 1 : 0);
+        }
+
+        public static final Parcelable.Creator<SavedState> CREATOR = new Parcelable.Creator<SavedState>() {
+            @Override
+            public SavedState createFromParcel(Parcel in) {
+                return new SavedState(in);
+            }
+
+            @Override
+            public SavedState[] newArray(int size) {
+                return new SavedState[size];
+            }
+        };
     }
 }
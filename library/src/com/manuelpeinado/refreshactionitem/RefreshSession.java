@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2013 Manuel Peinado
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.manuelpeinado.refreshactionitem;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A background operation which outlives the action item that displays it, for example
+ * across a screen rotation.
+ * <p>
+ * Keep the session somewhere that survives configuration changes (a retained fragment,
+ * <tt>onRetainCustomNonConfigurationInstance()</tt>...) and have the background task report
+ * its progress to it instead of to the action item. Every time a new action item is
+ * created, {@link #attach(RefreshActionItem)} it to the session: it is brought up to date
+ * and receives whatever the task reports from then on, so there is no need to restart
+ * the operation.
+ * <p>
+ * {@link #start()}, {@link #attach(RefreshActionItem)} and {@link #detach(RefreshActionItem)}
+ * must be called from the UI thread. The rest of the methods can be called from any thread.
+ */
+public class RefreshSession {
+    private volatile RefreshActionItem mItem;
+    private volatile boolean mRunning;
+    private volatile int mMax = 100;
+    private final AtomicInteger mProgress = new AtomicInteger();
+    private final FrameCoalescer mFinisher = new FrameCoalescer(new Runnable() {
+        @Override
+        public void run() {
+            applyFinish();
+        }
+    });
+
+    /**
+     * Makes the given action item display this session, replacing the previous one. Call
+     * it from <tt>onCreateOptionsMenu</tt>, once the action item has been created
+     */
+    public void attach(RefreshActionItem item) {
+        mItem = item;
+        item.setMax(mMax);
+        item.showProgress(mRunning);
+        if (mRunning) {
+            item.setProgress(mProgress.get());
+        }
+    }
+
+    /**
+     * Stops reporting to the given action item, if it is the attached one. Call it when the
+     * activity is destroyed so that the session doesn't keep it alive
+     */
+    public void detach(RefreshActionItem item) {
+        if (mItem == item) {
+            mItem = null;
+        }
+    }
+
+    /**
+     * Marks the beginning of the operation, turning the attached action item (if any)
+     * into a progress indicator. Usually called from
+     * {@link RefreshActionItem.RefreshActionListener#onRefreshButtonClick(RefreshActionItem)}
+     */
+    public void start() {
+        mFinisher.cancel();
+        mProgress.set(0);
+        mRunning = true;
+        RefreshActionItem item = mItem;
+        if (item != null) {
+            item.showProgress(true);
+        }
+    }
+
+    /**
+     * Marks the end of the operation. The attached action item is restored to its initial
+     * state as soon as possible
+     */
+    public void finish() {
+        mRunning = false;
+        mFinisher.schedule();
+    }
+
+    private void applyFinish() {
+        RefreshActionItem item = mItem;
+        if (item != null && !mRunning) {
+            item.showProgress(false);
+        }
+    }
+
+    public boolean isRunning() {
+        return mRunning;
+    }
+
+    /**
+     * @see RefreshActionItem#publishMax(int)
+     */
+    public void setMax(int max) {
+        mMax = max;
+        RefreshActionItem item = mItem;
+        if (item != null) {
+            item.publishMax(max);
+        }
+    }
+
+    public int getMax() {
+        return mMax;
+    }
+
+    /**
+     * @see RefreshActionItem#publishProgress(int)
+     */
+    public void setProgress(int progress) {
+        mProgress.set(progress);
+        RefreshActionItem item = mItem;
+        if (item != null) {
+            item.publishProgress(progress);
+        }
+    }
+
+    /**
+     * @see RefreshActionItem#publishIncrement(int)
+     */
+    public void incrementProgressBy(int diff) {
+        mProgress.addAndGet(diff);
+        RefreshActionItem item = mItem;
+        if (item != null) {
+            item.publishIncrement(diff);
+        }
+    }
+
+    public int getProgress() {
+        return mProgress.get();
+    }
+}
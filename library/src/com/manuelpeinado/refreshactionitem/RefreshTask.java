@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2013 Manuel Peinado
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.manuelpeinado.refreshactionitem;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+
+/**
+ * A background operation displayed by a {@link RefreshActionItem}.
+ * <p>
+ * The action item shows progress while the task runs, and is restored to its initial
+ * state when it ends. {@link #doInBackground(ProgressReporter, CancellationToken)} runs on a
+ * small thread pool shared by all the tasks (see {@link #setDefaultExecutor(Executor)})
+ * and the rest of the callbacks run on the UI thread. A task can only be executed once.
+ * <p>
+ * If the action item has {@link RefreshActionItem#setCancelOnTap(boolean)} enabled the user
+ * can cancel the task by tapping the progress indicator.
+ * 
+ * <pre>
+ * new RefreshTask&lt;List&lt;Item&gt;&gt;(mRefreshActionItem) {
+ *     protected List&lt;Item&gt; doInBackground(ProgressReporter reporter, CancellationToken token) throws Exception {
+ *         ...
+ *     }
+ *     protected void onSuccess(List&lt;Item&gt; items) {
+ *         ...
+ *     }
+ * }.execute();
+ * </pre>
+ * 
+ * @param <Result> The type of the result of the operation
+ */
+public abstract class RefreshTask<Result> {
+    private static final int POOL_SIZE = 2;
+    private static final int QUEUE_CAPACITY = 64;
+    private static final long KEEP_ALIVE_SECONDS = 30;
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+    private static volatile Executor sDefaultExecutor = createDefaultExecutor();
+    private final RefreshActionItem mItem;
+    // Created on execution, so that a task which never runs doesn't touch the action item
+    private ProgressReporter mReporter;
+    private final CancellationToken mCancellationToken = new CancellationToken();
+    private boolean mExecuted;
+
+    public RefreshTask(RefreshActionItem item) {
+        mItem = item;
+    }
+
+    private static Executor createDefaultExecutor() {
+        ThreadFactory threadFactory = new ThreadFactory() {
+            private final AtomicInteger mCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(final Runnable r) {
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        r.run();
+                    }
+                }, "RefreshTask #" + mCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+        return new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(QUEUE_CAPACITY), threadFactory);
+    }
+
+    /**
+     * Changes the executor used by {@link #execute()}. By default it is a pool of two
+     * background priority threads with room for 64 waiting tasks
+     */
+    public static void setDefaultExecutor(Executor executor) {
+        sDefaultExecutor = executor;
+    }
+
+    public static Executor getDefaultExecutor() {
+        return sDefaultExecutor;
+    }
+
+    /**
+     * Starts the task on the default executor. Must be called from the UI thread
+     */
+    public final RefreshTask<Result> execute() {
+        return executeOnExecutor(sDefaultExecutor);
+    }
+
+    /**
+     * Starts the task on the given executor. Must be called from the UI thread. If the
+     * executor rejects the task the action item is restored right away and
+     * {@link #onFailure(Exception)} receives the {@link RejectedExecutionException}
+     * 
+     * @throws IllegalStateException
+     *             if the task has already been executed
+     */
+    public final RefreshTask<Result> executeOnExecutor(Executor executor) {
+        if (mExecuted) {
+            throw new IllegalStateException("A RefreshTask can only be executed once");
+        }
+        mExecuted = true;
+        mItem.showProgress(true);
+        // Lets the user cancel the task from the action item. The reporter only reports
+        // while the item holds this token
+        mItem.setCancellationToken(mCancellationToken);
+        mReporter = new ProgressReporter(mItem, mCancellationToken);
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    runInBackground();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            finish(null, e);
+        }
+        return this;
+    }
+
+    private void runInBackground() {
+        Result result = null;
+        Exception error = null;
+        try {
+            mCancellationToken.throwIfCancelled();
+            result = doInBackground(mReporter, mCancellationToken);
+        } catch (Exception e) {
+            error = e;
+        }
+        final Result finalResult = result;
+        final Exception finalError = error;
+        sMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                finish(finalResult, finalError);
+            }
+        });
+    }
+
+    private void finish(Result result, Exception error) {
+        CancellationToken owner = mItem.getCancellationToken();
+        // If another task has taken over the action item the indicator type is its business
+        if (owner == mCancellationToken || owner == null) {
+            mReporter.restoreIndicatorType();
+        }
+        // If the token was replaced the action item has been cancelled by the user (so it
+        // already shows the button) or taken over by another task, leave it alone
+        if (owner == mCancellationToken) {
+            mItem.setCancellationToken(null);
+            mItem.showProgress(false);
+        }
+        if (mCancellationToken.isCancelled()) {
+            onCancelled();
+        } else if (error != null) {
+            onFailure(error);
+        } else {
+            onSuccess(result);
+        }
+    }
+
+    /**
+     * Requests the cancellation of the task. Cancellation is cooperative, see
+     * {@link CancellationToken}. Once the task stops {@link #onCancelled()} is called
+     * instead of {@link #onSuccess(Object)} or {@link #onFailure(Exception)}
+     */
+    public void cancel() {
+        mCancellationToken.cancel();
+    }
+
+    public boolean isCancelled() {
+        return mCancellationToken.isCancelled();
+    }
+
+    public CancellationToken getCancellationToken() {
+        return mCancellationToken;
+    }
+
+    public RefreshActionItem getRefreshActionItem() {
+        return mItem;
+    }
+
+    /**
+     * Does the actual work, on a background thread
+     * 
+     * @param reporter
+     *            Receives the progress of the operation. Its range is initially the max of
+     *            the action item
+     * @param token
+     *            Tells whether the task has been cancelled
+     */
+    protected abstract Result doInBackground(ProgressReporter reporter, CancellationToken token) throws Exception;
+
+    /**
+     * Called on the UI thread with the result of a task that completed normally
+     */
+    protected void onSuccess(Result result) {
+    }
+
+    /**
+     * Called on the UI thread if {@link #doInBackground(ProgressReporter, CancellationToken)}
+     * throws an exception
+     */
+    protected void onFailure(Exception error) {
+    }
+
+    /**
+     * Called on the UI thread once a cancelled task stops
+     */
+    protected void onCancelled() {
+    }
+}
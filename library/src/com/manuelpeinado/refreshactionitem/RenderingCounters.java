@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2013 Manuel Peinado
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.manuelpeinado.refreshactionitem;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The counters behind {@link RenderingMetrics}. They are updated from whatever thread does
+ * the work, so they are atomic.
+ */
+final class RenderingCounters {
+    final AtomicLong bitmapsAllocated = new AtomicLong();
+    final AtomicLong bytesAllocated = new AtomicLong();
+    final AtomicLong draws = new AtomicLong();
+    final AtomicLong invalidations = new AtomicLong();
+    final AtomicLong progressUpdatesReceived = new AtomicLong();
+    final AtomicLong progressUpdatesRendered = new AtomicLong();
+    final AtomicLong smoothProgressFrames = new AtomicLong();
+    final AtomicLong badgeAnimations = new AtomicLong();
+
+    void bitmapAllocated(long bytes) {
+        bitmapsAllocated.incrementAndGet();
+        bytesAllocated.addAndGet(bytes);
+    }
+
+    RenderingMetrics snapshot() {
+        return new RenderingMetrics(bitmapsAllocated.get(), bytesAllocated.get(), draws.get(),
+                invalidations.get(), progressUpdatesReceived.get(), progressUpdatesRendered.get(),
+                smoothProgressFrames.get(), badgeAnimations.get());
+    }
+
+    void reset() {
+        bitmapsAllocated.set(0);
+        bytesAllocated.set(0);
+        draws.set(0);
+        invalidations.set(0);
+        progressUpdatesReceived.set(0);
+        progressUpdatesRendered.set(0);
+        smoothProgressFrames.set(0);
+        badgeAnimations.set(0);
+    }
+}
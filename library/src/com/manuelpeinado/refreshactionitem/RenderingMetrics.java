@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2013 Manuel Peinado
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.manuelpeinado.refreshactionitem;
+
+/**
+ * A snapshot of how much rendering work an action item has done, meant to be logged or
+ * sent to your telemetry to catch rendering regressions.
+ * 
+ * @see RefreshActionItem#getRenderingMetrics()
+ * @see RefreshActionItem#setRenderingMetricsListener(RefreshActionItem.RenderingMetricsListener)
+ */
+public final class RenderingMetrics {
+    private final long mBitmapsAllocated;
+    private final long mBytesAllocated;
+    private final long mDraws;
+    private final long mInvalidations;
+    private final long mProgressUpdatesReceived;
+    private final long mProgressUpdatesRendered;
+    private final long mSmoothProgressFrames;
+    private final long mBadgeAnimations;
+
+    RenderingMetrics(long bitmapsAllocated, long bytesAllocated, long draws, long invalidations,
+            long progressUpdatesReceived, long progressUpdatesRendered, long smoothProgressFrames,
+            long badgeAnimations) {
+        mBitmapsAllocated = bitmapsAllocated;
+        mBytesAllocated = bytesAllocated;
+        mDraws = draws;
+        mInvalidations = invalidations;
+        mProgressUpdatesReceived = progressUpdatesReceived;
+        mProgressUpdatesRendered = progressUpdatesRendered;
+        mSmoothProgressFrames = smoothProgressFrames;
+        mBadgeAnimations = badgeAnimations;
+    }
+
+    /**
+     * Number of bitmaps allocated by the progress indicator, including the frames it added
+     * to the shared cache in {@link ProgressIndicatorRenderMode#ATLAS} mode
+     */
+    public long getBitmapsAllocated() {
+        return mBitmapsAllocated;
+    }
+
+    /**
+     * Total size of the bitmaps counted by {@link #getBitmapsAllocated()}, in bytes
+     */
+    public long getBytesAllocated() {
+        return mBytesAllocated;
+    }
+
+    /**
+     * Number of times the progress indicator has been drawn
+     */
+    public long getDraws() {
+        return mDraws;
+    }
+
+    /**
+     * Number of times the progress indicator has asked to be redrawn
+     */
+    public long getInvalidations() {
+        return mInvalidations;
+    }
+
+    /**
+     * Number of calls to {@link RefreshActionItem#setProgress(int)}, including the ones
+     * made on behalf of {@link RefreshActionItem#publishProgress(int)}
+     */
+    public long getProgressUpdatesReceived() {
+        return mProgressUpdatesReceived;
+    }
+
+    /**
+     * Number of progress updates that actually changed what the progress indicator shows.
+     * Updates too small to be noticed are skipped, see
+     * {@link RefreshActionItem#setProgressRedrawThreshold(float)}. With smooth progress,
+     * an update counts once the animation reaches it, and the frames in between are
+     * counted by {@link #getSmoothProgressFrames()} instead, so this stays comparable to
+     * {@link #getProgressUpdatesReceived()}
+     */
+    public long getProgressUpdatesRendered() {
+        return mProgressUpdatesRendered;
+    }
+
+    /**
+     * Number of intermediate frames drawn by the smooth progress animation, see
+     * {@link RefreshActionItem#setSmoothProgress(boolean)}
+     */
+    public long getSmoothProgressFrames() {
+        return mSmoothProgressFrames;
+    }
+
+    /**
+     * Number of animated badge shows and hides
+     */
+    public long getBadgeAnimations() {
+        return mBadgeAnimations;
+    }
+
+    @Override
+    public String toString() {
+        return "RenderingMetrics{bitmapsAllocated=" + mBitmapsAllocated
+                + ", bytesAllocated=" + mBytesAllocated
+                + ", draws=" + mDraws
+                + ", invalidations=" + mInvalidations
+                + ", progressUpdatesReceived=" + mProgressUpdatesReceived
+                + ", progressUpdatesRendered=" + mProgressUpdatesRendered
+                + ", smoothProgressFrames=" + mSmoothProgressFrames
+                + ", badgeAnimations=" + mBadgeAnimations + "}";
+    }
+}
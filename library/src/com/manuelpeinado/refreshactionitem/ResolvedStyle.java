@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2013 Manuel Peinado
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.manuelpeinado.refreshactionitem;
+
+import java.util.WeakHashMap;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.content.res.TypedArray;
+import android.graphics.Color;
+import android.graphics.drawable.Drawable;
+import android.util.AttributeSet;
+import android.util.SparseArray;
+
+/**
+ * Snapshot of the style attributes of an action item, as resolved against a theme.
+ * <p>
+ * Action items are usually created from a menu, without any attributes of their own, so
+ * every item created for the same theme ends up with exactly the same style. In that case
+ * the snapshot is cached per theme and the next items skip the {@link TypedArray}
+ * resolution altogether. Drawables are kept as their constant state, so that every item
+ * gets its own instance.
+ */
+final class ResolvedStyle {
+    // Themes are weakly referenced so that the cache does not leak the activities
+    private static final WeakHashMap<Resources.Theme, SparseArray<ResolvedStyle>> sCache = new WeakHashMap<Resources.Theme, SparseArray<ResolvedStyle>>();
+
+    // Null if the style does not specify it
+    ProgressIndicatorType progressIndicatorType;
+    boolean builtInIndeterminateIndicator;
+    ProgressIndicatorRenderMode renderMode = ProgressIndicatorRenderMode.BITMAP;
+    int progressIndicatorForegroundColor = Color.WHITE;
+    int progressIndicatorBackgroundColor = Color.BLACK;
+    // -1 if the style does not specify it
+    int badgeBackgroundColor = -1;
+    int badgeTextStyle;
+    int badgePosition;
+    boolean badgeOverlay;
+    private Drawable.ConstantState mIcon;
+    private Drawable.ConstantState mBackground;
+    // Drawables without constant state are kept as they are, and the snapshot is not cached
+    private Drawable mUnshareableIcon;
+    private Drawable mUnshareableBackground;
+    private boolean mShareable = true;
+
+    private ResolvedStyle() {
+    }
+
+    /**
+     * Returns the style for an action item with the given attributes, reusing a cached
+     * snapshot if the item has no attributes of its own
+     */
+    static ResolvedStyle obtain(Context context, AttributeSet attrs, int defStyle) {
+        if (attrs != null) {
+            return resolve(context, attrs, defStyle);
+        }
+        Resources.Theme theme = context.getTheme();
+        synchronized (sCache) {
+            SparseArray<ResolvedStyle> styles = sCache.get(theme);
+            ResolvedStyle style = styles != null ? styles.get(defStyle) : null;
+            if (style != null) {
+                return style;
+            }
+        }
+        ResolvedStyle style = resolve(context, null, defStyle);
+        if (style.mShareable) {
+            synchronized (sCache) {
+                SparseArray<ResolvedStyle> styles = sCache.get(theme);
+                if (styles == null) {
+                    styles = new SparseArray<ResolvedStyle>();
+                    sCache.put(theme, styles);
+                }
+                styles.put(defStyle, style);
+            }
+        }
+        return style;
+    }
+
+    private static ResolvedStyle resolve(Context context, AttributeSet attrs, int defStyle) {
+        ResolvedStyle style = new ResolvedStyle();
+        TypedArray a = context.obtainStyledAttributes(attrs, R.styleable.RefreshActionItem, defStyle, R.style.Widget_RefreshActionItem_Dark);
+        int N = a.getIndexCount();
+        for (int i = 0; i < N; ++i) {
+            int attr = a.getIndex(i);
+            switch (attr) {
+            case R.styleable.RefreshActionItem_progressIndicatorType:
+                style.progressIndicatorType = ProgressIndicatorType.values()[a.getInt(attr, 0)];
+                break;
+            case R.styleable.RefreshActionItem_builtInIndeterminateIndicator:
+                style.builtInIndeterminateIndicator = a.getBoolean(attr, false);
+                break;
+            case R.styleable.RefreshActionItem_progressIndicatorRenderMode:
+                style.renderMode = ProgressIndicatorRenderMode.values()[a.getInt(attr, 0)];
+                break;
+            case R.styleable.RefreshActionItem_refreshActionItemIcon:
+                Drawable icon = a.getDrawable(attr);
+                style.mIcon = style.getConstantState(icon);
+                if (style.mIcon == null) {
+                    style.mUnshareableIcon = icon;
+                }
+                break;
+            case R.styleable.RefreshActionItem_progressIndicatorForegroundColor:
+                style.progressIndicatorForegroundColor = a.getColor(attr, 0);
+                break;
+            case R.styleable.RefreshActionItem_progressIndicatorBackgroundColor:
+                style.progressIndicatorBackgroundColor = a.getColor(attr, 0);
+                break;
+            case R.styleable.RefreshActionItem_refreshActionItemBackground:
+                Drawable background = a.getDrawable(attr);
+                style.mBackground = style.getConstantState(background);
+                if (style.mBackground == null) {
+                    style.mUnshareableBackground = background;
+                }
+                break;
+            case R.styleable.RefreshActionItem_badgeBackgroundColor:
+                style.badgeBackgroundColor = a.getColor(attr, -1);
+                break;
+            case R.styleable.RefreshActionItem_badgeTextStyle:
+                style.badgeTextStyle = a.getResourceId(attr, 0);
+                break;
+            case R.styleable.RefreshActionItem_badgePosition:
+                style.badgePosition = a.getInt(attr, 0);
+                break;
+            case R.styleable.RefreshActionItem_badgeOverlay:
+                style.badgeOverlay = a.getBoolean(attr, false);
+                break;
+            }
+        }
+        a.recycle();
+        return style;
+    }
+
+    private Drawable.ConstantState getConstantState(Drawable drawable) {
+        if (drawable == null) {
+            return null;
+        }
+        Drawable.ConstantState state = drawable.getConstantState();
+        if (state == null) {
+            mShareable = false;
+        }
+        return state;
+    }
+
+    /**
+     * Returns a new instance of the refresh button icon, or null if the style does not
+     * specify one
+     */
+    Drawable newIcon(Resources res) {
+        return mIcon != null ? mIcon.newDrawable(res) : mUnshareableIcon;
+    }
+
+    /**
+     * Returns a new instance of the refresh button background, or null if the style does not
+     * specify one
+     */
+    Drawable newBackground(Resources res) {
+        return mBackground != null ? mBackground.newDrawable(res) : mUnshareableBackground;
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2013 Manuel Peinado
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.manuelpeinado.refreshactionitem;
+
+import android.graphics.Paint;
+import android.graphics.Typeface;
+import android.support.v4.util.LruCache;
+
+/**
+ * Caches the measurements of the short labels drawn by the library (badge counts,
+ * exclamation marks, progress percentages) so that drawing them again doesn't require
+ * measuring the text or allocating anything.
+ * <p>
+ * There is one cache per text appearance (size, typeface and flags of the paint), shared
+ * by all the views of the process which use that appearance. It also keeps the strings
+ * for the numbers which are most commonly displayed, so that they are not formatted on
+ * every update.
+ */
+final class TextMeasureCache {
+    /**
+     * Maximum number of different texts whose width is remembered for each appearance
+     */
+    private static final int MAX_MEASURED_TEXTS = 64;
+    /**
+     * Numbers up to this one are formatted only once
+     */
+    private static final int MAX_CACHED_NUMBER = 999;
+    /**
+     * Maximum number of text appearances remembered. Views keep their own reference to the
+     * cache they use, so an evicted appearance only costs a new lookup to the next view
+     */
+    private static final int MAX_APPEARANCES = 16;
+    private static final LruCache<AppearanceKey, TextMeasureCache> sCaches = new LruCache<AppearanceKey, TextMeasureCache>(MAX_APPEARANCES);
+    private static final String[] sNumbers = new String[MAX_CACHED_NUMBER + 1];
+    private static final String[] sPercents = new String[101];
+
+    // Private copy of the paint, so that measurements don't depend on the caller's paint
+    private final Paint mPaint;
+    private final LruCache<String, Float> mWidths = new LruCache<String, Float>(MAX_MEASURED_TEXTS);
+    private final float mAscent;
+    private final float mDescent;
+
+    private TextMeasureCache(Paint paint) {
+        mPaint = new Paint(paint);
+        Paint.FontMetrics metrics = new Paint.FontMetrics();
+        mPaint.getFontMetrics(metrics);
+        mAscent = metrics.ascent;
+        mDescent = metrics.descent;
+    }
+
+    /**
+     * Returns the cache for the text appearance of the given paint. The result should be
+     * kept around until the appearance of the paint changes, so that this lookup is not
+     * done on every draw
+     */
+    static synchronized TextMeasureCache forPaint(Paint paint) {
+        AppearanceKey key = new AppearanceKey(paint);
+        TextMeasureCache cache = sCaches.get(key);
+        if (cache == null) {
+            cache = new TextMeasureCache(paint);
+            sCaches.put(key, cache);
+        }
+        return cache;
+    }
+
+    float measureText(String text) {
+        Float width = mWidths.get(text);
+        if (width == null) {
+            synchronized (mPaint) {
+                width = mPaint.measureText(text);
+            }
+            mWidths.put(text, width);
+        }
+        return width;
+    }
+
+    /**
+     * Distance from the baseline to the top of the text, as a negative value
+     */
+    float getAscent() {
+        return mAscent;
+    }
+
+    /**
+     * Distance from the baseline to the bottom of the text
+     */
+    float getDescent() {
+        return mDescent;
+    }
+
+    /**
+     * Returns the decimal representation of the given number, without formatting it again
+     * if it was requested before
+     */
+    static String getNumberText(int number) {
+        if (number < 0 || number > MAX_CACHED_NUMBER) {
+            return Integer.toString(number);
+        }
+        // Racing threads may format the same number twice, which is harmless
+        String text = sNumbers[number];
+        if (text == null) {
+            text = Integer.toString(number);
+            sNumbers[number] = text;
+        }
+        return text;
+    }
+
+    /**
+     * @param percent A number between 0 and 100
+     * @return The given percentage followed by a "%" sign
+     */
+    static String getPercentText(int percent) {
+        percent = Math.max(0, Math.min(100, percent));
+        String text = sPercents[percent];
+        if (text == null) {
+            text = percent + "%";
+            sPercents[percent] = text;
+        }
+        return text;
+    }
+
+    private static final class AppearanceKey {
+        private final float mTextSize;
+        private final Typeface mTypeface;
+        private final int mFlags;
+
+        AppearanceKey(Paint paint) {
+            mTextSize = paint.getTextSize();
+            mTypeface = paint.getTypeface();
+            mFlags = paint.getFlags();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof AppearanceKey)) {
+                return false;
+            }
+            AppearanceKey other = (AppearanceKey) o;
+            return mTextSize == other.mTextSize && mFlags == other.mFlags
+                    && (mTypeface == null ? other.mTypeface == null : mTypeface.equals(other.mTypeface));
+        }
+
+        @Override
+        public int hashCode() {
+            int result = Float.floatToIntBits(mTextSize);
+            result = 31 * result + (mTypeface == null ? 0 : mTypeface.hashCode());
+            result = 31 * result + mFlags;
+            return result;
+        }
+    }
+}
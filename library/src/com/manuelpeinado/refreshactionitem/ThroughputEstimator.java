@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2013 Manuel Peinado
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.manuelpeinado.refreshactionitem;
+
+/**
+ * Estimates how fast an operation progresses, using an exponentially weighted moving
+ * average of the rate measured between progress updates. Samples closer than
+ * {@link #MIN_SAMPLE_INTERVAL} to the previous one are ignored, so feeding it on every
+ * progress update is cheap and the estimate is not dominated by noise.
+ * <p>
+ * Not thread-safe, callers must synchronize.
+ */
+final class ThroughputEstimator {
+    /**
+     * Unit: milliseconds
+     */
+    static final long MIN_SAMPLE_INTERVAL = 100;
+    /**
+     * How quickly old samples lose their influence. Unit: milliseconds
+     */
+    private static final float TIME_CONSTANT = 2000;
+    private long mLastTime = -1;
+    private long mLastProgress;
+    // Units per second, negative until there are enough samples
+    private float mRate = -1;
+
+    void reset() {
+        mLastTime = -1;
+        mRate = -1;
+    }
+
+    /**
+     * @return whether the estimate changed
+     */
+    boolean addSample(long progress, long now) {
+        if (mLastTime < 0 || progress < mLastProgress) {
+            // First sample, or the operation started over
+            mLastTime = now;
+            mLastProgress = progress;
+            return false;
+        }
+        long elapsed = now - mLastTime;
+        if (elapsed < MIN_SAMPLE_INTERVAL) {
+            return false;
+        }
+        float rate = (progress - mLastProgress) * 1000f / elapsed;
+        if (mRate < 0) {
+            mRate = rate;
+        } else {
+            // The weight depends on the elapsed time, so irregular updates are handled fine
+            float alpha = 1 - (float) Math.exp(-elapsed / TIME_CONSTANT);
+            mRate += alpha * (rate - mRate);
+        }
+        mLastTime = now;
+        mLastProgress = progress;
+        return true;
+    }
+
+    /**
+     * Returns the estimated rate in units per second, or a negative value if it is not
+     * known yet
+     */
+    float getRate() {
+        return mRate;
+    }
+
+    /**
+     * Returns the estimated time needed to progress the given amount, in milliseconds, or
+     * -1 if it is not known
+     */
+    long getRemainingTime(long remaining) {
+        if (mRate <= 0) {
+            return -1;
+        }
+        return (long) (remaining * 1000 / mRate);
+    }
+}
@@ -1,9 +1,12 @@
 package com.readystatesoftware.viewbadger;
 
+import java.util.HashMap;
+
 import android.content.Context;
 import android.content.res.Resources;
 import android.graphics.Color;
 import android.graphics.Typeface;
+import android.graphics.drawable.Drawable;
 import android.graphics.drawable.ShapeDrawable;
 import android.graphics.drawable.shapes.RoundRectShape;
 import android.util.AttributeSet;
@@ -45,6 +48,9 @@ public class BadgeView extends TextView {
 	private static Animation fadeIn;
 	private static Animation fadeOut;
 	
+	// Immutable background state shared by all the badges with the same color and corner radius
+	private static final HashMap<Long, Drawable.ConstantState> backgroundStates = new HashMap<Long, Drawable.ConstantState>();
+	
 	private Context context;
 	private View target;
 	
@@ -55,7 +61,7 @@ public class BadgeView extends TextView {
 	
 	private boolean isShown;
 	
-	private ShapeDrawable badgeBg;
+	private Drawable badgeBg;
 	
 	private int targetTabIndex;
 	
@@ -119,13 +125,7 @@ public class BadgeView extends TextView {
 		setPadding(paddingPixels, 0, paddingPixels, 0);
 		setTextColor(DEFAULT_TEXT_COLOR);
 		
-		fadeIn = new AlphaAnimation(0, 1);
-		fadeIn.setInterpolator(new DecelerateInterpolator());
-		fadeIn.setDuration(200);
-
-		fadeOut = new AlphaAnimation(1, 0);
-		fadeOut.setInterpolator(new AccelerateInterpolator());
-		fadeOut.setDuration(200);
+		initAnimations();
 		
 		isShown = false;
 		
@@ -137,6 +137,20 @@ public class BadgeView extends TextView {
 		
 	}
 
+	private static void initAnimations() {
+		// The animations are never modified, so they are created once and shared by all badges
+		if (fadeIn != null) {
+			return;
+		}
+		fadeIn = new AlphaAnimation(0, 1);
+		fadeIn.setInterpolator(new DecelerateInterpolator());
+		fadeIn.setDuration(200);
+
+		fadeOut = new AlphaAnimation(1, 0);
+		fadeOut.setInterpolator(new AccelerateInterpolator());
+		fadeOut.setDuration(200);
+	}
+
 	private void applyTo(View target) {
 		
 		LayoutParams lp = target.getLayoutParams();
@@ -319,16 +333,25 @@ public class BadgeView extends TextView {
 		return increment(-offset);
 	}
 	
-	private ShapeDrawable getDefaultBackground() {
+	private Drawable getDefaultBackground() {
 		
 		int r = dipToPixels(DEFAULT_CORNER_RADIUS_DIP);
-		float[] outerR = new float[] {r, r, r, r, r, r, r, r};
-        
-		RoundRectShape rr = new RoundRectShape(outerR, null, null);
-		ShapeDrawable drawable = new ShapeDrawable(rr);
-		drawable.getPaint().setColor(badgeColor);
+		Long key = Long.valueOf(((long) badgeColor << 32) | (r & 0xffffffffL));
 		
-		return drawable;
+		synchronized (backgroundStates) {
+			Drawable.ConstantState state = backgroundStates.get(key);
+			if (state == null) {
+				float[] outerR = new float[] {r, r, r, r, r, r, r, r};
+				
+				RoundRectShape rr = new RoundRectShape(outerR, null, null);
+				ShapeDrawable drawable = new ShapeDrawable(rr);
+				drawable.getPaint().setColor(badgeColor);
+				state = drawable.getConstantState();
+				backgroundStates.put(key, state);
+			}
+			// Call mutate() on the result before changing it, the state is shared
+			return state.newDrawable();
+		}
 		
 	}
 	
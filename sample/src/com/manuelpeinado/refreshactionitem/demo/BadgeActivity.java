@@ -42,13 +42,16 @@ public class BadgeActivity extends SherlockListActivity implements RefreshAction
     
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
-        getSupportMenuInflater().inflate(R.menu.refresh, menu);
+        getSupportMenuInflater().inflate(R.menu.refresh_recycled, menu);
         MenuItem item = menu.findItem(R.id.refresh_button);
-        mRefreshActionItem = (RefreshActionItem) item.getActionView();
-        mRefreshActionItem.setMenuItem(item);
+        boolean firstTime = mRefreshActionItem == null;
+        // Keeps the badge when the menu is rebuilt, see showNumericBadge()
+        mRefreshActionItem = RefreshActionItem.recycle(this, item, mRefreshActionItem);
         mRefreshActionItem.setMax(100);
         mRefreshActionItem.setRefreshActionListener(this);
-        loadData();
+        if (firstTime) {
+            loadData();
+        }
         return true;
     }
 
@@ -109,6 +112,8 @@ public class BadgeActivity extends SherlockListActivity implements RefreshAction
 
     public void showNumericBadge(View view) {
         mRefreshActionItem.showBadge("17");
+        // The menu is rebuilt around the same action item, so the badge stays
+        supportInvalidateOptionsMenu();
     }
 
     public void hideBadge(View view) {
@@ -24,8 +24,11 @@ import android.widget.ArrayAdapter;
 import com.actionbarsherlock.app.SherlockListActivity;
 import com.actionbarsherlock.view.Menu;
 import com.actionbarsherlock.view.MenuItem;
+import com.manuelpeinado.refreshactionitem.CancellationToken;
+import com.manuelpeinado.refreshactionitem.ProgressReporter;
 import com.manuelpeinado.refreshactionitem.RefreshActionItem;
 import com.manuelpeinado.refreshactionitem.RefreshActionItem.RefreshActionListener;
+import com.manuelpeinado.refreshactionitem.RefreshTask;
 
 public class BasicUsageActivity extends SherlockListActivity implements RefreshActionListener {
     private RefreshActionItem mRefreshActionItem;
@@ -46,33 +49,28 @@ public class BasicUsageActivity extends SherlockListActivity implements RefreshA
         mRefreshActionItem.setMenuItem(item);
         mRefreshActionItem.setMax(100);
         mRefreshActionItem.setRefreshActionListener(this);
+        mRefreshActionItem.setCancelOnTap(true);
         loadData();
         return true;
     }
 
     private void loadData() {
-        mRefreshActionItem.showProgress(true);
-        new Thread(new Runnable() {
+        new RefreshTask<String[]>(mRefreshActionItem) {
             @Override
-            public void run() {
-                for (int i = 0; i <= 100; ++i) {
-                    try {
-                        Thread.sleep(20);
-                        mRefreshActionItem.setProgress(i);
-                    } catch (InterruptedException e) {
-                    }
+            protected String[] doInBackground(ProgressReporter reporter, CancellationToken token) throws Exception {
+                reporter.setMax(100);
+                for (int i = 0; i <= 100 && !token.isCancelled(); ++i) {
+                    Thread.sleep(20);
+                    reporter.setProgress(i);
                 }
-                runOnUiThread(new Runnable() {
-                    @Override
-                    public void run() {
-                        mRefreshActionItem.showProgress(false);
-                        String[] items = generateRandomItemList();
-                        setListAdapter(new ArrayAdapter<String>(getApplicationContext(), android.R.layout.simple_list_item_1, android.R.id.text1, items));
-                    }
-                });
+                return generateRandomItemList();
             }
 
-        }).start();
+            @Override
+            protected void onSuccess(String[] items) {
+                setListAdapter(new ArrayAdapter<String>(getApplicationContext(), android.R.layout.simple_list_item_1, android.R.id.text1, items));
+            }
+        }.execute();
     }
 
     private String[] generateRandomItemList() {
@@ -17,6 +17,7 @@ package com.manuelpeinado.refreshactionitem.demo;
 
 import java.util.Random;
 
+import android.content.Context;
 import android.content.Intent;
 import android.os.Bundle;
 import android.view.View;
@@ -28,14 +29,22 @@ import com.actionbarsherlock.view.Menu;
 import com.actionbarsherlock.view.MenuItem;
 import com.manuelpeinado.refreshactionitem.RefreshActionItem;
 import com.manuelpeinado.refreshactionitem.RefreshActionItem.RefreshActionListener;
+import com.manuelpeinado.refreshactionitem.RefreshSession;
 
 public class StyledActivity extends SherlockListActivity implements RefreshActionListener {
     private RefreshActionItem mSaveButton;
+    // Retained across configuration changes, so that a save in progress survives a rotation
+    private RefreshSession mSession;
     private Random r = new Random();
 
+    @SuppressWarnings("deprecation")
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        mSession = (RefreshSession) getLastNonConfigurationInstance();
+        if (mSession == null) {
+            mSession = new RefreshSession();
+        }
         setContentView(R.layout.activity_styled);
         getSupportActionBar().setDisplayHomeAsUpEnabled(true);
     }
@@ -45,31 +54,49 @@ public class StyledActivity extends SherlockListActivity implements RefreshActio
         getSupportMenuInflater().inflate(R.menu.save, menu);
         MenuItem item = menu.findItem(R.id.save_button);
         mSaveButton = (RefreshActionItem) item.getActionView();
+        // An id lets the action item keep its badge across configuration changes
+        mSaveButton.setId(R.id.save_action_item);
         mSaveButton.setMenuItem(item);
         mSaveButton.setMax(100);
         mSaveButton.setRefreshActionListener(this);
+        mSession.attach(mSaveButton);
         String[] items = generateRandomItemList();
         setListAdapter(new ArrayAdapter<String>(getApplicationContext(), R.layout.simple_list_item, android.R.id.text1, items));
         return true;
     }
 
+    @Override
+    public Object onRetainNonConfigurationInstance() {
+        return mSession;
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (mSaveButton != null) {
+            mSession.detach(mSaveButton);
+        }
+    }
+
     private void saveData() {
-        mSaveButton.showProgress(true);
+        mSession.start();
+        final RefreshSession session = mSession;
+        final Context appContext = getApplicationContext();
         new Thread(new Runnable() {
             @Override
             public void run() {
                 for (int i = 0; i <= 100; ++i) {
                     try {
                         Thread.sleep(20);
-                        mSaveButton.setProgress(i);
+                        session.setProgress(i);
                     } catch (InterruptedException e) {
                     }
                 }
+                session.finish();
                 runOnUiThread(new Runnable() {
                     @Override
                     public void run() {
-                        mSaveButton.showProgress(false);
-                        Toast.makeText(getApplicationContext(), "Your data has been saved", Toast.LENGTH_SHORT).show();
+                        Toast.makeText(appContext, "Your data has been saved", Toast.LENGTH_SHORT).show();
                     }
                 });
             }